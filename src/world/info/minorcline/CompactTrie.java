@@ -0,0 +1,257 @@
+package world.info.minorcline;
+
+/**
+ * A read-only trie packed into flat arrays, made from a Trie by <code>Trie.freeze()</code>.
+ * Nodes are numbered in breadth-first order, so the children of every node are consecutive:
+ * the children of node n are the nodes from firstChild[n] up to firstChild[n + 1].
+ * Each node stores the key of the edge leading to it and its value, and the children of a node
+ * are sorted by key hash so that a child is found by binary search.
+ * This costs a few array slots per edge, instead of a Node object and a HashMap per node.
+ *
+ * Lookups behave like those of the Trie it was made from. Keys only need equals() and hashCode().
+ * A CompactTrie is never modified, so any number of threads may read it at once.
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.random.RandomGenerator;
+
+public class CompactTrie<K, V> {
+	private int[] firstChild;
+	private int[] keyHashes;
+	private Object[] keys;
+	private Object[] values;
+	private int size;
+
+	/**
+	 * @param firstChild the index of each node's first child, plus one final entry holding the node count.
+	 * @param keys the key of the edge into each node. The root's key is unused.
+	 * @param values the value of each node, or null.
+	 */
+	CompactTrie(int[] firstChild, Object[] keys, Object[] values, int size) {
+		this.firstChild = firstChild;
+		this.keys = keys;
+		this.values = values;
+		this.size = size;
+		keyHashes = new int[keys.length];
+		for (int i = 1; i < keys.length; i++) keyHashes[i] = keys[i] == null ? 0 : keys[i].hashCode();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the number of nodes, including the root.
+	 */
+	public int nodeCount() {
+		return keys.length;
+	}
+
+	/**
+	 * Gets the number of nodes without children.
+	 */
+	int leafCount() {
+		int leaves = 0;
+		for (int node = 0; node < keys.length; node++) {
+			if (firstChild[node + 1] == firstChild[node])
+				leaves++;
+		}
+		return leaves;
+	}
+
+	public V get(K[] sequence) {
+		int node = 0;
+		for (K k : sequence) {
+			node = child(node, k);
+			if (node < 0)
+				return null;
+		}
+		return value(node);
+	}
+
+	public V get(Iterable<K> sequence) {
+		int node = node(sequence);
+		return node < 0 ? null : value(node);
+	}
+
+	/**
+	 * Finds the node at the end of <code>sequence</code>.
+	 * @return the index of the node, or -1 if there is none.
+	 */
+	int node(Iterable<K> sequence) {
+		int node = 0;
+		for (K k : sequence) {
+			node = child(node, k);
+			if (node < 0)
+				return -1;
+		}
+		return node;
+	}
+
+	public V get(ContextWindow<K> window) {
+		int node = node(window);
+		return node < 0 ? null : value(node);
+	}
+
+	/**
+	 * Finds the node at the end of the items in <code>window</code>, oldest first, without allocating.
+	 * @return the index of the node, or -1 if there is none.
+	 */
+	int node(ContextWindow<K> window) {
+		int node = 0;
+		for (int i = 0; i < window.size(); i++) {
+			node = child(node, window.get(i));
+			if (node < 0)
+				return -1;
+		}
+		return node;
+	}
+
+	/**
+	 * Gets the value of a node found by <code>node()</code>, or null if it has none.
+	 */
+	V valueAt(int node) {
+		return value(node);
+	}
+
+	/**
+	 * Computes the suffix link of every node: the node whose key sequence is that of the node without
+	 * its first key, as in a suffix automaton. Nodes are numbered breadth-first, so each node's link
+	 * is found from its parent's in one step.
+	 * @return the suffix link of each node, which is 0 for the children of the root and -1 for the
+	 * root and for nodes whose shortened sequence is not in the trie.
+	 */
+	@SuppressWarnings("unchecked")
+	int[] suffixLinks() {
+		int[] links = new int[keys.length];
+		links[0] = -1;
+		for (int node = 0; node < keys.length - 1; node++) {
+			for (int child = firstChild[node]; child < firstChild[node + 1]; child++) {
+				if (node == 0)
+					links[child] = 0;
+				else
+					links[child] = links[node] < 0 ? -1 : child(links[node], (K) keys[child]);
+			}
+		}
+		return links;
+	}
+
+	/**
+	 * Picks a key sequence by walking from the root through uniformly random children to a leaf.
+	 * Not every key is equally likely, but every key that ends at a leaf can be picked.
+	 * @return the key sequence of the leaf, or an empty list if the trie is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	List<K> randomKey(RandomGenerator random) {
+		List<K> key = new ArrayList<K>();
+		int node = 0;
+		while (firstChild[node + 1] > firstChild[node]) {
+			node = firstChild[node] + random.nextInt(firstChild[node + 1] - firstChild[node]);
+			key.add((K) keys[node]);
+		}
+		return key;
+	}
+
+	/**
+	 * Puts every key sequence and value of this trie into <code>trie</code>.
+	 */
+	void putAllInto(Trie<K, V> trie) {
+		putAllInto(0, new ArrayList<K>(), trie);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void putAllInto(int node, List<K> path, Trie<K, V> trie) {
+		if (values[node] != null)
+			trie.put(path, value(node));
+		for (int child = firstChild[node]; child < firstChild[node + 1]; child++) {
+			path.add((K) keys[child]);
+			putAllInto(child, path, trie);
+			path.remove(path.size() - 1);
+		}
+	}
+
+	public boolean containsKey(K[] sequence) {
+		return get(sequence) != null;
+	}
+
+	public boolean containsKey(Iterable<K> sequence) {
+		return get(sequence) != null;
+	}
+
+	/**
+	 * Iterates over all the values in the trie, in breadth-first order.
+	 */
+	public Iterator<V> valuesIterator() {
+		return new Iterator<V>() {
+			int next = advance(0);
+
+			private int advance(int from) {
+				while (from < values.length && values[from] == null) from++;
+				return from;
+			}
+
+			public boolean hasNext() {
+				return next < values.length;
+			}
+
+			@SuppressWarnings("unchecked")
+			public V next() {
+				if (next >= values.length)
+					throw new NoSuchElementException();
+				V v = (V) values[next];
+				next = advance(next + 1);
+				return v;
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private V value(int node) {
+		return (V) values[node];
+	}
+
+	/**
+	 * Finds the child of <code>node</code> along the edge with key <code>k</code>.
+	 * @return the index of the child, or -1 if there is none.
+	 */
+	int child(int node, K k) {
+		int lo = firstChild[node];
+		int hi = firstChild[node + 1] - 1;
+		int h = k == null ? 0 : k.hashCode();
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int midHash = keyHashes[mid];
+			if (midHash < h)
+				lo = mid + 1;
+			else if (midHash > h)
+				hi = mid - 1;
+			else
+				return scanEqualHashes(mid, node, h, k);
+		}
+		return -1;
+	}
+
+	/**
+	 * Looks for <code>k</code> among the children next to <code>mid</code> which share its hash.
+	 */
+	private int scanEqualHashes(int mid, int node, int h, K k) {
+		int from = firstChild[node];
+		int to = firstChild[node + 1];
+		for (int i = mid; i < to && keyHashes[i] == h; i++) {
+			if (k == null ? keys[i] == null : k.equals(keys[i]))
+				return i;
+		}
+		for (int i = mid - 1; i >= from && keyHashes[i] == h; i--) {
+			if (k == null ? keys[i] == null : k.equals(keys[i]))
+				return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,128 @@
+package world.info.minorcline;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+public class CompactTrieTest {
+    private Trie<String, String> trie;
+    private boolean pass = true;
+
+    public CompactTrieTest(){
+        trie = new Trie<>();
+    }
+
+    public static void main(String[] args){
+        CompactTrieTest test = new CompactTrieTest();
+        test.runTests();
+    }
+
+    public void runTests(){
+        Map<String, Boolean> testResults = new HashMap<>();
+
+        testResults.put("testGetAfterFreeze", testGetAfterFreeze());
+        testResults.put("testGetPrefixWithoutValue", testGetPrefixWithoutValue());
+        testResults.put("testGetMissing", testGetMissing());
+        testResults.put("testSizeAndNodes", testSizeAndNodes());
+        testResults.put("testValuesIterator", testValuesIterator());
+        testResults.put("testCollidingKeys", testCollidingKeys());
+        testResults.put("testEmpty", testEmpty());
+        testResults.put("testSuffixLinks", testSuffixLinks());
+
+        for (Entry<String, Boolean> e : testResults.entrySet()){
+            if (e.getValue() == false){
+                System.out.println("Test failure: " + e.getKey());
+                pass = false;
+            }
+        }
+        if (pass)
+            System.out.println("Passed all tests.");
+    }
+
+    private static List<String> list(String... items){
+        List<String> list = new ArrayList<>();
+        for (String item : items)
+            list.add(item);
+        return list;
+    }
+
+    //The link of "abc" is "bc", and "bd" is missing so "abd" has none.
+    public boolean testSuffixLinks(){
+        trie.clear();
+        trie.put(list("a", "b", "c"), "ABC");
+        trie.put(list("a", "b", "d"), "ABD");
+        trie.put(list("b", "c", "a"), "BCA");
+        CompactTrie<String, String> sut = trie.freeze();
+        int[] links = sut.suffixLinks();
+        int abc = sut.node(list("a", "b", "c"));
+        int abd = sut.node(list("a", "b", "d"));
+        return links[0] == -1 && links[sut.node(list("a"))] == 0
+                && links[abc] == sut.node(list("b", "c")) && links[abd] == -1
+                && links[sut.node(list("a", "b"))] == sut.node(list("b"));
+    }
+
+    public boolean testGetAfterFreeze(){
+        trie.clear();
+        trie.put(list("a", "b", "c"), "ABC");
+        trie.put(list("a", "b", "d"), "ABD");
+        trie.put(list("x"), "X");
+        CompactTrie<String, String> sut = trie.freeze();
+        return "ABC".equals(sut.get(list("a", "b", "c")))
+                && "ABD".equals(sut.get(new String[] {"a", "b", "d"}))
+                && "X".equals(sut.get(list("x")));
+    }
+
+    public boolean testGetPrefixWithoutValue(){
+        trie.clear();
+        trie.put(list("a", "b", "c"), "ABC");
+        CompactTrie<String, String> sut = trie.freeze();
+        return sut.get(list("a", "b")) == null && !sut.containsKey(list("a"));
+    }
+
+    public boolean testGetMissing(){
+        trie.clear();
+        trie.put(list("a", "b", "c"), "ABC");
+        CompactTrie<String, String> sut = trie.freeze();
+        return sut.get(list("a", "z", "c")) == null && sut.get(list("a", "b", "c", "d")) == null;
+    }
+
+    public boolean testSizeAndNodes(){
+        trie.clear();
+        trie.put(list("a", "b", "c"), "ABC");
+        trie.put(list("a", "b", "d"), "ABD");
+        CompactTrie<String, String> sut = trie.freeze();
+        return sut.size() == 2 && sut.nodeCount() == 5;
+    }
+
+    public boolean testValuesIterator(){
+        trie.clear();
+        trie.put(list("a", "b"), "AB");
+        trie.put(list("a"), "A");
+        trie.put(list("c", "d", "e"), "CDE");
+        Set<String> found = new HashSet<>();
+        Iterator<String> itr = trie.freeze().valuesIterator();
+        while (itr.hasNext())
+            found.add(itr.next());
+        return found.size() == 3 && found.contains("AB") && found.contains("A") && found.contains("CDE");
+    }
+
+    //"Aa" and "BB" have the same hash code.
+    public boolean testCollidingKeys(){
+        trie.clear();
+        trie.put(list("Aa"), "first");
+        trie.put(list("BB"), "second");
+        CompactTrie<String, String> sut = trie.freeze();
+        return "first".equals(sut.get(list("Aa"))) && "second".equals(sut.get(list("BB")));
+    }
+
+    public boolean testEmpty(){
+        trie.clear();
+        CompactTrie<String, String> sut = trie.freeze();
+        return sut.isEmpty() && sut.get(list("a")) == null && !sut.valuesIterator().hasNext();
+    }
+}
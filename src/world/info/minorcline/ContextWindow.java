@@ -0,0 +1,110 @@
+package world.info.minorcline;
+
+/**
+ * The most recent items of a sequence, up to a fixed capacity, kept in a ring buffer.
+ * Adding an item to a full window drops the oldest one by moving the head, so sliding the window
+ * along a sequence allocates nothing. Trie and CompactTrie look a window up directly, item by item,
+ * without an Iterator, and NGramIndex hashes its ring buffer in place.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ContextWindow<T> {
+	private Object[] items;
+	/**The index of the oldest item in items.*/
+	private int head;
+	private int size;
+
+	/**
+	 * Creates an empty window which holds up to <code>capacity</code> items.
+	 */
+	public ContextWindow(int capacity) {
+		items = new Object[capacity];
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Creates a window which holds as many items as <code>initial</code>, and starts out holding them.
+	 */
+	public ContextWindow(List<T> initial) {
+		this(initial.size());
+		for (T item : initial)
+			add(item);
+	}
+
+	/**
+	 * Appends an item, dropping the oldest item if the window is full.
+	 */
+	public void add(T item) {
+		if (size < items.length) {
+			items[wrap(head + size)] = item;
+			size++;
+		}
+		else {
+			items[head] = item;
+			head = wrap(head + 1);
+		}
+	}
+
+	/**
+	 * Gets the item at <code>index</code>, counting from the oldest item at 0.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		return (T) items[wrap(head + index)];
+	}
+
+	/**
+	 * Gets the item at <code>index</code>, counting from the newest item at 0.
+	 */
+	public T newest(int index) {
+		return get(size - 1 - index);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return items.length;
+	}
+
+	public boolean isFull() {
+		return size == items.length;
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Copies the items into a new list, oldest first.
+	 */
+	public List<T> toList() {
+		List<T> list = new ArrayList<T>(size);
+		for (int i = 0; i < size; i++)
+			list.add(get(i));
+		return list;
+	}
+
+	/**
+	 * Gets the ring buffer itself, for hashing in place. Only meaningful while the window is full.
+	 */
+	Object[] ring() {
+		return items;
+	}
+
+	/**
+	 * Gets the index of the oldest item in <code>ring()</code>.
+	 */
+	int head() {
+		return head;
+	}
+
+	private int wrap(int i) {
+		return i >= items.length ? i - items.length : i;
+	}
+}
@@ -0,0 +1,80 @@
+package world.info.minorcline;
+
+/**
+ * Approximately counts how often each of a great many items has been seen, in a fixed amount of memory.
+ * Items are given by a 64-bit hash. Each item is counted in one cell of each of <code>DEPTH</code> rows,
+ * and its estimate is the smallest of those cells. <code>halve()</code> ages the counts, after which
+ * earlier sightings count for half, rounded down. An estimate is never lower than an item's count so aged,
+ * though it may be lower than its true number of sightings, and is too high only when every row collides
+ * with more frequent items. Updates are conservative: only the cells holding the current minimum are
+ * raised, which keeps over-estimates small.
+ *
+ * Used by MarkovGenerator to admit only subsequences which have been seen often enough, lately.
+ */
+
+public class CountMinSketch {
+	private static final int DEPTH = 4;
+
+	private int[] counts;
+	private int mask;
+
+	/**
+	 * @param width the number of cells in each row, rounded up to a power of two. A width of a few times
+	 * the number of distinct items expected keeps the estimates of rare items close to exact.
+	 */
+	public CountMinSketch(int width) {
+		int w = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+		counts = new int[DEPTH * w];
+		mask = w - 1;
+	}
+
+	/**
+	 * Counts one more sighting of an item.
+	 * @return the estimated number of sightings of the item, including this one.
+	 */
+	public int add(long hash) {
+		int min = estimate(hash);
+		if (min == Integer.MAX_VALUE)
+			return min;
+		int raised = min + 1;
+		int h1 = (int) mix(hash);
+		int h2 = (int) (mix(hash) >>> 32) | 1;
+		for (int row = 0; row < DEPTH; row++) {
+			int cell = row * (mask + 1) + ((h1 + row * h2) & mask);
+			if (counts[cell] < raised)
+				counts[cell] = raised;
+		}
+		return raised;
+	}
+
+	/**
+	 * Gets the estimated number of sightings of an item, which is never less than the true number, with the
+	 * sightings before each <code>halve()</code> halved, rounded down.
+	 */
+	public int estimate(long hash) {
+		int h1 = (int) mix(hash);
+		int h2 = (int) (mix(hash) >>> 32) | 1;
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			int c = counts[row * (mask + 1) + ((h1 + row * h2) & mask)];
+			if (c < min)
+				min = c;
+		}
+		return min;
+	}
+
+	/**
+	 * Halves every count, so that sightings made before count half as much as those made after.
+	 */
+	public void halve() {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] >>>= 1;
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,146 @@
+package world.info.minorcline;
+
+/**
+ * A Markov chain generator for items of any type that runs on ints: each item is interned into a dense ID
+ * by a SymbolDictionary as it is read, the model is an IntMarkovGenerator over the IDs, and generated IDs
+ * are decoded back to items only as they are output. Follows the same contract as MarkovGenerator
+ * (addIterator, finalizeGenerator, newSession, generate), but the items' equals() and hashCode() are called
+ * once per item read, and compareTo() never, rather than at every step of every lookup. This suits
+ * items whose equality is costly or that are many, such as events of a log or notes of a score.
+ *
+ * Unlike a MarkovGenerator, it cannot be trained once finalized, has no budget and no back-off.
+ * Several generators may share one SymbolDictionary, so that their IDs agree.
+ */
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+public class EncodedMarkovGenerator<T> {
+	private IntMarkovGenerator generator;
+	private SymbolDictionary<T> dictionary;
+	/**The session used by generate() and generateList().*/
+	private EncodedMarkovSession<T> defaultSession;
+
+	/**
+	 * @param order the order of the Markov model; length of observed subsequences
+	 */
+	public EncodedMarkovGenerator(int order) {
+		this(order, new SymbolDictionary<T>());
+	}
+
+	/**
+	 * @param order the order of the Markov model; length of observed subsequences
+	 * @param dictionary interns the items; may be shared with other generators.
+	 */
+	public EncodedMarkovGenerator(int order, SymbolDictionary<T> dictionary) {
+		generator = new IntMarkovGenerator(order);
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Reads all the input from an iterator, interning each item, and adds that information to the
+	 * Markov chain, unless the generator has already been finalized.
+	 * @param dataIterator iterates through the next input sequence.
+	 * @return true if the information from the iterator was added to the model, or false if the model
+	 * was not changed as a result of the call.
+	 * @throws IllegalStateException when <code>dataIterator</code> does not provide enough data to
+	 * furnish the generator.
+	 */
+	public boolean addIterator(Iterator<T> dataIterator) throws IllegalStateException {
+		return generator.addIterator(new PrimitiveIterator.OfInt() {
+			public boolean hasNext() {
+				return dataIterator.hasNext();
+			}
+
+			public int nextInt() {
+				return dictionary.id(dataIterator.next());
+			}
+		});
+	}
+
+	/**
+	 * Prepares for generation. Must be called before <code>generate()</code> or <code>newSession()</code> can be used.
+	 * @throws IllegalStateException if not enough information has been offered through
+	 * <code>addIterator()</code>.
+	 */
+	public void finalizeGenerator() throws IllegalStateException {
+		finalizeGenerator(null);
+	}
+
+	/**
+	 * Prepares for generation, with the model's tables in <code>arena</code>, outside the Java heap.
+	 * @param arena where to put the tables, or null to keep them in the heap.
+	 * @throws IllegalStateException if not enough information has been offered through
+	 * <code>addIterator()</code>.
+	 */
+	public void finalizeGenerator(OffHeapArena arena) throws IllegalStateException {
+		generator.finalizeGenerator(arena);
+		if (defaultSession == null)
+			defaultSession = newSession();
+	}
+
+	/**
+	 * Starts a new, independent stream of output from the finalized model, with its own
+	 * source of random numbers.
+	 * @throws IllegalStateException if EncodedMarkovGenerator has not been finalized.
+	 */
+	public EncodedMarkovSession<T> newSession() throws IllegalStateException {
+		return newSession(new SplittableRandom());
+	}
+
+	/**
+	 * Starts a new, independent stream of output from the finalized model, drawing random
+	 * numbers from <code>random</code>. Sessions with equally seeded sources generate the same items.
+	 * @throws IllegalStateException if EncodedMarkovGenerator has not been finalized.
+	 */
+	public EncodedMarkovSession<T> newSession(RandomGenerator random) throws IllegalStateException {
+		return new EncodedMarkovSession<T>(generator.newSession(random), dictionary);
+	}
+
+	/**
+	 * Uses the model to generate a random item based on the items generated before by this generator.
+	 * @throws IllegalStateException if EncodedMarkovGenerator has not been finalized.
+	 */
+	public T generate() throws IllegalStateException {
+		if (defaultSession == null)
+			throw new IllegalStateException("EncodedMarkovGenerator has not yet been finalized.");
+		return defaultSession.generate();
+	}
+
+	/**
+	 * Generates a random sequence of <code>length</code> items, following on from the items generated
+	 * before by this generator.
+	 * @throws IllegalStateException if EncodedMarkovGenerator has not been finalized.
+	 */
+	public List<T> generateList(int length) throws IllegalStateException {
+		if (defaultSession == null)
+			throw new IllegalStateException("EncodedMarkovGenerator has not yet been finalized.");
+		return defaultSession.generateList(length);
+	}
+
+	/**
+	 * @return the number of distinct subsequences of length <code>order</code> which are followed by an item.
+	 */
+	public int size() {
+		return generator.size();
+	}
+
+	public int order() {
+		return generator.order();
+	}
+
+	public SymbolDictionary<T> dictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Gets the finalized model of IDs, which can be saved, or measured by <code>footprint()</code>.
+	 * @throws IllegalStateException if EncodedMarkovGenerator has not been finalized.
+	 */
+	public IntMarkovModel model() throws IllegalStateException {
+		return generator.model();
+	}
+}
@@ -0,0 +1,168 @@
+package world.info.minorcline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EncodedMarkovGeneratorTest {
+	private EncodedMarkovGenerator<String> sut;
+	private boolean pass = true;
+
+	public static void main(String[] args){
+		EncodedMarkovGeneratorTest test = new EncodedMarkovGeneratorTest();
+		test.runTests();
+	}
+
+	public void runTests(){
+		Map<String, Boolean> testResults = new HashMap<>();
+
+		testResults.put("testDictionaryIdsAreDense", testDictionaryIdsAreDense());
+		testResults.put("testGenerateRestartsAtDeadEnd", testGenerateRestartsAtDeadEnd());
+		testResults.put("testGenerateBeforeFinalize", testGenerateBeforeFinalize());
+		testResults.put("testMatchesIntModel", testMatchesIntModel());
+		testResults.put("testBulkMatchesGenerate", testBulkMatchesGenerate());
+		testResults.put("testSharedDictionary", testSharedDictionary());
+		testResults.put("testEqualityOnlyWhileTraining", testEqualityOnlyWhileTraining());
+
+		for (Entry<String, Boolean> e : testResults.entrySet()){
+			if (e.getValue() == false){
+				System.out.println("Test failure: " + e.getKey());
+				pass = false;
+			}
+		}
+		if (pass)
+			System.out.println("Passed all tests.");
+	}
+
+	private static List<String> words(String s){
+		return List.of(s.split(" "));
+	}
+
+	public boolean testDictionaryIdsAreDense(){
+		SymbolDictionary<String> dictionary = new SymbolDictionary<>();
+		int[] ids = new int[3000];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = dictionary.id("w" + i % 2000);
+		for (int i = 0; i < ids.length; i++){
+			if (ids[i] != i % 2000 || !dictionary.symbol(ids[i]).equals("w" + i % 2000))
+				return false;
+		}
+		try{
+			dictionary.symbol(2000);
+			return false;
+		} catch (IndexOutOfBoundsException e){
+		}
+		return dictionary.size() == 2000 && dictionary.find("w7") == 7 && dictionary.find("x") == -1;
+	}
+
+	public boolean testGenerateRestartsAtDeadEnd(){
+		sut = new EncodedMarkovGenerator<>(2);
+		sut.addIterator(words("do re mi fa").iterator());
+		sut.finalizeGenerator();
+		return sut.size() == 2 && sut.generateList(8).equals(words("mi fa do re mi fa do re"));
+	}
+
+	public boolean testGenerateBeforeFinalize(){
+		sut = new EncodedMarkovGenerator<>(2);
+		sut.addIterator(words("do re mi fa").iterator());
+		try{
+			sut.generate();
+			return false;
+		} catch (IllegalStateException e){
+		}
+		try{
+			sut.newSession();
+			return false;
+		} catch (IllegalStateException e){
+			return true;
+		}
+	}
+
+	//The encoded model is the int model of the items' IDs, so equally seeded sessions agree.
+	public boolean testMatchesIntModel(){
+		List<String> input = new ArrayList<>();
+		for (char c : MarkovBenchmark.syntheticCorpus(1 << 12, 2))
+			input.add("note " + c);
+		sut = new EncodedMarkovGenerator<>(3);
+		sut.addIterator(input.iterator());
+		sut.finalizeGenerator();
+		IntMarkovGenerator ids = new IntMarkovGenerator(3);
+		ids.addIterator(input.stream().mapToInt(sut.dictionary()::find).iterator());
+		ids.finalizeGenerator();
+		EncodedMarkovSession<String> session = sut.newSession(new SplittableRandom(4));
+		IntMarkovSession expected = ids.newSession(new SplittableRandom(4));
+		for (int i = 0; i < 2000; i++){
+			if (!session.generate().equals(sut.dictionary().symbol(expected.generate())))
+				return false;
+		}
+		return sut.size() == ids.size();
+	}
+
+	public boolean testBulkMatchesGenerate(){
+		sut = new EncodedMarkovGenerator<>(2);
+		sut.addIterator(words(new String(MarkovBenchmark.syntheticCorpus(1 << 12, 3))).iterator());
+		sut.finalizeGenerator();
+		EncodedMarkovSession<String> one = sut.newSession(new SplittableRandom(8));
+		EncodedMarkovSession<String> list = sut.newSession(new SplittableRandom(8));
+		EncodedMarkovSession<String> array = sut.newSession(new SplittableRandom(8));
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 2500; i++)
+			expected.add(one.generate());
+		String[] buffer = new String[2501];
+		array.generate(buffer, 1, 2500);
+		return list.generateList(2500).equals(expected) && Arrays.asList(buffer).subList(1, 2501).equals(expected);
+	}
+
+	public boolean testSharedDictionary(){
+		SymbolDictionary<String> dictionary = new SymbolDictionary<>();
+		EncodedMarkovGenerator<String> first = new EncodedMarkovGenerator<>(1, dictionary);
+		EncodedMarkovGenerator<String> second = new EncodedMarkovGenerator<>(1, dictionary);
+		first.addIterator(words("a b a b").iterator());
+		second.addIterator(words("b c b c").iterator());
+		first.finalizeGenerator();
+		second.finalizeGenerator();
+		return dictionary.size() == 3 && second.dictionary() == first.dictionary()
+				&& first.generateList(10).containsAll(words("a b")) && second.generateList(10).containsAll(words("b c"));
+	}
+
+	/**
+	 * An item that counts the calls to its equals() and hashCode().
+	 */
+	private static class Event {
+		static final AtomicInteger calls = new AtomicInteger();
+		final String name;
+
+		Event(String name){
+			this.name = name;
+		}
+
+		public boolean equals(Object o){
+			calls.incrementAndGet();
+			return o instanceof Event && ((Event) o).name.equals(name);
+		}
+
+		public int hashCode(){
+			calls.incrementAndGet();
+			return name.hashCode();
+		}
+	}
+
+	public boolean testEqualityOnlyWhileTraining(){
+		List<Event> input = new ArrayList<>();
+		for (char c : MarkovBenchmark.syntheticCorpus(1 << 12, 5))
+			input.add(new Event(String.valueOf(c)));
+		EncodedMarkovGenerator<Event> events = new EncodedMarkovGenerator<>(4);
+		Event.calls.set(0);
+		events.addIterator(input.iterator());
+		events.finalizeGenerator();
+		int trainingCalls = Event.calls.getAndSet(0);
+		events.newSession(new SplittableRandom(1)).generateList(5000);
+		//one hashCode() and at most one equals() per item read, and two more hashCode() calls to add an item
+		return trainingCalls <= 2 * input.size() + 2 * events.dictionary().size() && Event.calls.get() == 0;
+	}
+}
@@ -0,0 +1,69 @@
+package world.info.minorcline;
+
+/**
+ * One stream of output from a finalized EncodedMarkovGenerator: an IntMarkovSession over the IDs of the
+ * items, each of which is decoded by the generator's SymbolDictionary as it is output.
+ * Any number of sessions can generate from the same generator at once, one per thread, without locking.
+ * A single session is not thread-safe.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EncodedMarkovSession<T> {
+	/**Number of IDs generated at a time by the bulk methods.*/
+	private static final int CHUNK_SIZE = 1 << 10;
+
+	private IntMarkovSession session;
+	private SymbolDictionary<T> dictionary;
+	/**Reused by the bulk methods; allocated on first use.*/
+	private int[] ids;
+
+	EncodedMarkovSession(IntMarkovSession session, SymbolDictionary<T> dictionary) {
+		this.session = session;
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Uses the model to generate a random item based on the previous sequence of items generated
+	 * in this session. When the previous sequence has no known successor, the session restarts
+	 * from the first subsequence of the input.
+	 */
+	public T generate() {
+		return dictionary.symbol(session.generate());
+	}
+
+	/**
+	 * Generates <code>length</code> items into <code>buffer</code>, starting at <code>offset</code>.
+	 */
+	public void generate(T[] buffer, int offset, int length) {
+		allocateIds();
+		while (length > 0) {
+			int n = Math.min(length, CHUNK_SIZE);
+			session.generate(ids, 0, n);
+			for (int i = 0; i < n; i++) buffer[offset + i] = dictionary.symbol(ids[i]);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * Generates a random sequence of <code>length</code> items, following on from the items generated
+	 * before by this session.
+	 */
+	public List<T> generateList(int length) {
+		allocateIds();
+		List<T> items = new ArrayList<T>(length);
+		while (items.size() < length) {
+			int n = Math.min(length - items.size(), CHUNK_SIZE);
+			session.generate(ids, 0, n);
+			for (int i = 0; i < n; i++) items.add(dictionary.symbol(ids[i]));
+		}
+		return items;
+	}
+
+	private void allocateIds() {
+		if (ids == null)
+			ids = new int[CHUNK_SIZE];
+	}
+}
@@ -0,0 +1,296 @@
+package world.info.minorcline;
+
+/**
+ * Estimates, before training, how many contexts a model of each order would have and how much memory it
+ * would take, from a sample of the input, so that the order and the heap can be chosen without running
+ * out of memory first.
+ *
+ * The estimator counts the distinct subsequences of every length up to one more than the highest order,
+ * each in a HyperLogLog, so it takes a few hundred kilobytes however large the sample is. The contexts of
+ * order k are the distinct subsequences of length k, and the suffix entries are those of length k + 1,
+ * since each is a context followed by one suffix. The counts are projected to the whole input from how
+ * fast they grew over the second half of the sample: a count that grew by a factor g while the sample
+ * doubled is taken to keep growing as the input's length to the power log2(g), which is 1 for contexts
+ * that are almost all new, and near 0 for those that have all been seen.
+ *
+ * <code>sample()</code> reads evenly spaced blocks making up a fraction of some files, first every other
+ * block and then the rest, so that both halves of the sample cover the whole input. Subsequences that
+ * span two blocks are not counted, which matters little for blocks of many symbols.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+public class FootprintEstimator {
+	/**Most bytes read from the input at a time.*/
+	private static final int BLOCK_SIZE = 1 << 16;
+	/**Fewest blocks in a sample, so that each half of it covers the whole input; small samples get smaller blocks.*/
+	private static final int MIN_BLOCKS = 16;
+	private static final int MIN_BLOCK_SIZE = 1 << 10;
+	private static final long PRIME = 0x100000001b3L;
+
+	private int maxOrder;
+	/**distinct[k - 1] counts the distinct subsequences of length k, up to maxOrder + 1.*/
+	private HyperLogLog[] distinct;
+	/**The counts and the number of symbols sampled as of checkpoint(), or null before it.*/
+	private long[] halfway;
+	private long halfwaySymbols;
+	private long sampledSymbols;
+	private long totalSymbols;
+	/**The most recent symbols, newest at (last + 1) modulo the length.*/
+	private int[] window;
+
+	/**
+	 * @param maxOrder the highest order to estimate.
+	 */
+	public FootprintEstimator(int maxOrder) {
+		if (maxOrder < 1)
+			throw new IllegalArgumentException("maxOrder must be at least 1.");
+		this.maxOrder = maxOrder;
+		distinct = new HyperLogLog[maxOrder + 1];
+		for (int k = 0; k <= maxOrder; k++) distinct[k] = new HyperLogLog();
+		window = new int[maxOrder + 1];
+	}
+
+	/**
+	 * Samples a fraction of the given text files, and projects the counts to their whole length.
+	 * @param fileNames the files a model would be trained on.
+	 * @param charset the charset of the files.
+	 * @param words whether to count the tokens of a TokenIterator, as a model of words would,
+	 * rather than chars.
+	 * @param fraction the share of the files to read, from 0 to 1; a few percent usually suffices.
+	 * @param maxOrder the highest order to estimate.
+	 * @throws IOException if a file cannot be read.
+	 */
+	public static FootprintEstimator sample(List<String> fileNames, Charset charset, boolean words, double fraction,
+			int maxOrder) throws IOException {
+		if (!(fraction > 0 && fraction <= 1))
+			throw new IllegalArgumentException("fraction must be more than 0 and at most 1.");
+		FootprintEstimator estimator = new FootprintEstimator(maxOrder);
+		Vocabulary vocabulary = words ? new Vocabulary() : null;
+		List<FileChannel> channels = new ArrayList<FileChannel>();
+		try {
+			long totalBytes = 0;
+			for (String f : fileNames) {
+				FileChannel channel = FileChannel.open(Paths.get(f), StandardOpenOption.READ);
+				channels.add(channel);
+				totalBytes += channel.size();
+			}
+			double sampleBytes = totalBytes * fraction;
+			long blocks = Math.max(MIN_BLOCKS, (long) Math.ceil(sampleBytes / BLOCK_SIZE));
+			int blockSize = (int) Math.max(MIN_BLOCK_SIZE, Math.min(BLOCK_SIZE, Math.ceil(sampleBytes / blocks)));
+			long stride = Math.max(blockSize, totalBytes / blocks);
+			long sampledBytes = 0;
+			for (int pass = 0; pass < 2; pass++) {
+				for (FileChannel channel : channels) {
+					long size = channel.size();
+					//the first pass takes the even blocks of all the input, the second the odd ones
+					for (long position = pass * stride; position < size; position += 2 * stride) {
+						sampledBytes += estimator.addBlock(channel, position, blockSize, charset, vocabulary);
+					}
+				}
+				if (pass == 0)
+					estimator.checkpoint();
+			}
+			if (sampledBytes > 0)
+				estimator.projectTo((long) ((double) estimator.sampledSymbols * totalBytes / sampledBytes));
+		} finally {
+			for (FileChannel channel : channels) channel.close();
+		}
+		return estimator;
+	}
+
+	/**
+	 * Reads one block of a file, decodes it and counts its symbols.
+	 * @return the number of bytes read.
+	 */
+	private int addBlock(FileChannel channel, long position, int blockSize, Charset charset, Vocabulary vocabulary)
+			throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(blockSize);
+		while (bytes.hasRemaining() && channel.read(bytes, position + bytes.position()) > 0);
+		bytes.flip();
+		int read = bytes.remaining();
+		//a block may start or end in the middle of a char, which is dropped rather than counted as a symbol
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.IGNORE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = decoder.decode(bytes);
+		if (vocabulary == null)
+			add(chars.chars().iterator());
+		else
+			add(new TokenIterator(new CharBufferReader(chars), vocabulary));
+		return read;
+	}
+
+	/**
+	 * Counts the subsequences of one run of consecutive symbols. Runs are counted independently, so no
+	 * subsequence spans two of them.
+	 */
+	public void add(PrimitiveIterator.OfInt symbols) {
+		int filled = 0;
+		int last = -1;
+		while (symbols.hasNext()) {
+			last = last + 1 == window.length ? 0 : last + 1;
+			window[last] = symbols.nextInt();
+			if (filled < window.length)
+				filled++;
+			sampledSymbols++;
+			//the subsequence of length k ending here, hashed newest symbol first
+			long h = 0;
+			int w = last;
+			for (int k = 1; k <= filled; k++) {
+				h = (h ^ window[w]) * PRIME + k;
+				distinct[k - 1].add(h);
+				w = w == 0 ? window.length - 1 : w - 1;
+			}
+		}
+	}
+
+	/**
+	 * Records the counts so far, from which their growth over the rest of the sample is measured.
+	 * Call it about halfway through the sample, after runs spread over the whole input. Without a
+	 * checkpoint, every count is projected to grow in proportion to the input, which overestimates.
+	 */
+	public void checkpoint() {
+		halfway = new long[distinct.length];
+		for (int k = 0; k < distinct.length; k++) halfway[k] = distinct[k].estimate();
+		halfwaySymbols = sampledSymbols;
+	}
+
+	/**
+	 * Sets the length of the whole input, in symbols, which the counts are projected to.
+	 * Until it is set, the counts are those of the sample.
+	 */
+	public void projectTo(long totalSymbols) {
+		this.totalSymbols = totalSymbols;
+	}
+
+	public int maxOrder() {
+		return maxOrder;
+	}
+
+	public long sampledSymbols() {
+		return sampledSymbols;
+	}
+
+	/**
+	 * Gets the length of the whole input that the counts are projected to, in symbols.
+	 */
+	public long totalSymbols() {
+		return Math.max(totalSymbols, sampledSymbols);
+	}
+
+	/**
+	 * Projects the number of distinct subsequences of length <code>length</code> in the whole input.
+	 */
+	private long distinct(int length) {
+		long sampled = Math.min(distinct[length - 1].estimate(), sampledSymbols);
+		long total = totalSymbols();
+		if (total <= sampledSymbols || sampled == 0)
+			return sampled;
+		double exponent = 1;
+		if (halfway != null && halfwaySymbols > 0 && halfwaySymbols < sampledSymbols && halfway[length - 1] > 0) {
+			exponent = Math.log((double) sampled / halfway[length - 1])
+					/ Math.log((double) sampledSymbols / halfwaySymbols);
+			exponent = Math.max(0, Math.min(1, exponent));
+		}
+		long projected = (long) (sampled * Math.pow((double) total / sampledSymbols, exponent));
+		return Math.max(sampled, Math.min(projected, total));
+	}
+
+	/**
+	 * Projects the number of contexts of a model of the given order: its distinct subsequences of that length.
+	 */
+	public long contexts(int order) {
+		checkOrder(order);
+		return distinct(order);
+	}
+
+	/**
+	 * Projects the number of suffix entries of a model of the given order: its distinct (context, suffix)
+	 * pairs, which are its distinct subsequences one longer than the order.
+	 */
+	public long suffixes(int order) {
+		checkOrder(order);
+		return distinct(order + 1);
+	}
+
+	/**
+	 * Projects the number of nodes of the Trie of a MarkovGenerator of the given order: one for every
+	 * distinct subsequence of length 1 to the order, and the root.
+	 */
+	public long trieNodes(int order) {
+		checkOrder(order);
+		long nodes = 1;
+		for (int k = 1; k <= order; k++) nodes += distinct(k);
+		return nodes;
+	}
+
+	/**
+	 * Projects the footprint of an IntMarkovGenerator of the given order trained on the whole input.
+	 */
+	public ModelFootprint intFootprint(int order) {
+		return IntMarkovGenerator.projectFootprint(order, contexts(order), suffixes(order));
+	}
+
+	/**
+	 * Projects the footprint of a MarkovGenerator of the given order, without back-off, trained on the
+	 * whole input.
+	 */
+	public ModelFootprint genericFootprint(int order) {
+		return MarkovGenerator.projectFootprint(order, trieNodes(order), contexts(order), suffixes(order));
+	}
+
+	private void checkOrder(int order) {
+		if (order < 1 || order > maxOrder)
+			throw new IllegalArgumentException("order must be from 1 to " + maxOrder + ".");
+	}
+
+	/**
+	 * Formats a table of the projected contexts and heap of each order, for both kinds of generator.
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Sampled %d of about %d symbols.%n", sampledSymbols, totalSymbols()));
+		sb.append(String.format("%5s %14s %14s %14s %14s%n", "order", "contexts", "suffixes", "int peak", "generic peak"));
+		for (int order = 1; order <= maxOrder; order++) {
+			sb.append(String.format("%5d %14d %14d %14s %14s%n", order, contexts(order), suffixes(order),
+					ModelFootprint.formatBytes(intFootprint(order).peakBytes()),
+					ModelFootprint.formatBytes(genericFootprint(order).peakBytes())));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A Reader of the chars left in a CharBuffer, for tokenizing a decoded block.
+	 */
+	private static class CharBufferReader extends Reader {
+		private CharBuffer chars;
+
+		CharBufferReader(CharBuffer chars) {
+			this.chars = chars;
+		}
+
+		public int read(char[] buffer, int offset, int length) {
+			if (!chars.hasRemaining())
+				return -1;
+			int n = Math.min(length, chars.remaining());
+			chars.get(buffer, offset, n);
+			return n;
+		}
+
+		public void close() {
+		}
+	}
+}
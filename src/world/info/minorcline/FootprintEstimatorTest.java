@@ -0,0 +1,134 @@
+package world.info.minorcline;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+public class FootprintEstimatorTest {
+	private Path file;
+	private boolean pass = true;
+
+	public FootprintEstimatorTest() throws IOException{
+		file = Files.createTempFile("FootprintEstimatorTest", ".txt");
+		file.toFile().deleteOnExit();
+		Files.write(file, new String(MarkovBenchmark.syntheticCorpus(1 << 17, 11)).getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static void main(String[] args) throws IOException{
+		FootprintEstimatorTest test = new FootprintEstimatorTest();
+		test.runTests();
+	}
+
+	public void runTests(){
+		Map<String, Boolean> testResults = new HashMap<>();
+
+		testResults.put("testHyperLogLogAccuracy", testHyperLogLogAccuracy());
+		testResults.put("testWholeInputMatchesModel", testWholeInputMatchesModel());
+		testResults.put("testSampleProjectsWholeInput", testSampleProjectsWholeInput());
+		testResults.put("testIntModelFootprint", testIntModelFootprint());
+		testResults.put("testGeneratorFootprint", testGeneratorFootprint());
+
+		for (Entry<String, Boolean> e : testResults.entrySet()){
+			if (e.getValue() == false){
+				System.out.println("Test failure: " + e.getKey());
+				pass = false;
+			}
+		}
+		if (pass)
+			System.out.println("Passed all tests.");
+	}
+
+	private static boolean near(long estimate, long actual, double tolerance){
+		return Math.abs(estimate - actual) <= tolerance * actual;
+	}
+
+	private IntMarkovGenerator train(int order) throws IOException{
+		IntMarkovGenerator mg = new IntMarkovGenerator(order);
+		mg.addText(new TextPipeline(file.toString(), StandardCharsets.UTF_8));
+		mg.finalizeGenerator();
+		return mg;
+	}
+
+	public boolean testHyperLogLogAccuracy(){
+		HyperLogLog sut = new HyperLogLog();
+		for (int i = 0; i < 100000; i++){
+			sut.add(i);
+			sut.add(i);
+		}
+		HyperLogLog few = new HyperLogLog();
+		for (int i = 0; i < 10; i++)
+			few.add(i);
+		return near(sut.estimate(), 100000, 0.03) && few.estimate() == 10 && new HyperLogLog().estimate() == 0;
+	}
+
+	//Reading the whole input, only the subsequences spanning two blocks are missed.
+	public boolean testWholeInputMatchesModel(){
+		try{
+			FootprintEstimator sut = FootprintEstimator.sample(List.of(file.toString()), StandardCharsets.UTF_8, false, 1, 6);
+			for (int order : new int[] {2, 4, 6}){
+				IntMarkovModel model = train(order).model();
+				if (!near(sut.contexts(order), model.size(), 0.05) || !near(sut.suffixes(order), model.suffixCount(), 0.05))
+					return false;
+			}
+			return sut.totalSymbols() == sut.sampledSymbols();
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testSampleProjectsWholeInput(){
+		try{
+			FootprintEstimator sut = FootprintEstimator.sample(List.of(file.toString()), StandardCharsets.UTF_8, false, 0.25, 4);
+			IntMarkovModel model = train(4).model();
+			return sut.sampledSymbols() < sut.totalSymbols() / 2 && near(sut.totalSymbols(), 1 << 17, 0.05)
+					&& near(sut.contexts(4), model.size(), 0.25)
+					&& sut.intFootprint(4).peakBytes() > model.footprint().totalBytes();
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testIntModelFootprint(){
+		try{
+			IntMarkovModel model = train(3).model();
+			ModelFootprint sut = model.footprint();
+			long tables = 0;
+			for (long bytes : sut.structures().values())
+				tables += bytes;
+			return sut.contexts() == model.size() && sut.suffixes() == model.suffixCount()
+					&& sut.totalBytes() == tables && sut.totalBytes() >= 12L * model.suffixCount()
+					&& sut.peakBytes() == sut.totalBytes() && !sut.isOffHeap();
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testGeneratorFootprint(){
+		MarkovGenerator<Character> sut = new MarkovGenerator<>(3);
+		List<Character> input = new ArrayList<>();
+		for (char c : "the cat and the hat and the bat".toCharArray())
+			input.add(c);
+		sut.addIterator(input.iterator());
+		try{
+			sut.footprint();
+			return false;
+		} catch (IllegalStateException e){
+		}
+		sut.finalizeGenerator();
+		ModelFootprint before = sut.footprint();
+		List<Character> more = new ArrayList<>();
+		for (char c : "xyzw".toCharArray())
+			more.add(c);
+		sut.addIterator(more.iterator());
+		ModelFootprint after = sut.footprint();
+		return before.contexts() == sut.size() - 1 && after.contexts() == sut.size()
+				&& before.nodes() == before.edges() + 1 && before.suffixes() >= before.contexts()
+				&& after.totalBytes() > before.totalBytes() && after.structures().containsKey("training trie");
+	}
+}
@@ -5,8 +5,9 @@ package world.info.minorcline;
  * HashPile is like a HashSet, but can store multiple distinct
  * objects that are equal.
  * Permits constant-time remove and contains operations.
- * "Remove" is constant-time on average. Worst case is linear time,
- * which occurs all the objects in the HashPile are equal.
+ * Equal objects are kept together in a Wad, which tells them apart by identity
+ * in an IdentityHashMap, so "remove" stays constant-time on average even when
+ * all the objects in the HashPile are equal.
  * 
  * Caution: HashPile is not appropriate for collections of objects
  * that will be mutated. Objects that are equal when they are stored 
@@ -16,9 +17,10 @@ package world.info.minorcline;
  */
 
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.Deque;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 public class HashPile<T> {
 	private HashMap<T, Wad<T>> pile;
@@ -38,14 +40,17 @@ public class HashPile<T> {
 		return size;
 	}
 	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
 	public void add(T item) {
 		Wad<T> wad = pile.get(item);
 		if (wad == null) {
-			pile.put(item, new Wad<T>(item));
-		}
-		else {
-			wad.add(item);
+			wad = new Wad<T>();
+			pile.put(item, wad);
 		}
+		wad.add(item);
 		size++;
 	}
 	
@@ -61,7 +66,8 @@ public class HashPile<T> {
 	/*
 	 * Remove the exact item 'item'. Unlike the remove() specified
 	 * in Collections, this method will not remove the first item
-	 * found which is equal to item; it will only remove the same item.
+	 * found which is equal to item; it will only remove the same item,
+	 * as many times as it was added.
 	 */
 	public void removeExactly(T item) {
 		Wad<T> wad = pile.get(item);
@@ -69,9 +75,7 @@ public class HashPile<T> {
 			return;
 		}
 		else {
-			int before = wad.size();
-			wad.removeExactly(item);
-			size -= before - wad.size();
+			size -= wad.removeExactly(item);
 			if (wad.isEmpty())
 				pile.remove(item);
 		}
@@ -79,97 +83,75 @@ public class HashPile<T> {
 	
 	/*
 	 * This method will always group like items together.
+	 * An item added more than once is returned once for each time.
 	 */
 	public Iterator<T> iterator(){
 		return new Iterator<T>() {
 			Iterator<Wad<T>> wadItr = pile.values().iterator();
-			Iterator<T> currentWad = wadItr.next().iterator();
+			Iterator<Map.Entry<T, int[]>> itemItr = null;
+			T item = null;
+			int remaining = 0;
 			
 			public boolean hasNext() {
-				return currentWad.hasNext() || wadItr.hasNext();
+				while (remaining == 0) {
+					if (itemItr != null && itemItr.hasNext()) {
+						Map.Entry<T, int[]> e = itemItr.next();
+						item = e.getKey();
+						remaining = e.getValue()[0];
+					}
+					else if (wadItr.hasNext()) {
+						itemItr = wadItr.next().items.entrySet().iterator();
+					}
+					else {
+						return false;
+					}
+				}
+				return true;
 			}
 			
 			public T next() {
-				if (currentWad.hasNext())
-					return currentWad.next();
-				else {
-					currentWad = wadItr.next().iterator();
-					return currentWad.next();
-				}
+				if (!hasNext())
+					throw new NoSuchElementException();
+				remaining--;
+				return item;
 			}
 		};
 	}
 	
 	/*
 	 * This is a collection of objects that are equal.
-	 * They may or may not be the same.
+	 * They may or may not be the same, so each distinct object is
+	 * counted under its identity.
 	 */
-	private class Wad<U>{
-		private Deque<WrappedItem<U>> list;
+	private static class Wad<U>{
+		private IdentityHashMap<U, int[]> items;
 		
-		Wad(U item){
-			list = new LinkedList<WrappedItem<U>>();
-			list.push(new WrappedItem<U>(item));
+		Wad(){
+			items = new IdentityHashMap<U, int[]>(2);
 		}
 		
-		//Ignores items that are not equal to the other items in the Wad.
 		void add(U item) {
-			if (!list.peek().value.equals(item))
-				return;
+			int[] count = items.get(item);
+			if (count == null)
+				items.put(item, new int[] {1});
 			else
-				list.push(new WrappedItem<U>(item));
+				count[0]++;
 		}
 
 		boolean isEmpty() {
-			return list.isEmpty();
-		}
-		
-		void removeExactly(U item) {
-			for (HashPile<T>.WrappedItem<U> u : list) {
-				if (u.value == item) {
-					list.remove(u);
-				}
-			}
-		}
-		
-		int size() {
-			return list.size();
+			return items.isEmpty();
 		}
 		
-		U item() {
-			return list.peek().value;
+		/*
+		 * Returns the number of times the item had been added.
+		 */
+		int removeExactly(U item) {
+			int[] count = items.remove(item);
+			return count == null ? 0 : count[0];
 		}
 		
 		boolean contains(U item) {
-			for (HashPile<T>.WrappedItem<U> u : list) {
-				if (u.value == item) {
-					return true;
-				}
-			}
-			return false;
-		}
-		
-		Iterator<U> iterator(){
-			return new Iterator<U>() {
-				Iterator<WrappedItem<U>> itr = list.iterator();
-				
-				public boolean hasNext() {
-					return itr.hasNext();
-				}
-				
-				public U next() {
-					return itr.next().value;
-				}
-			};
-		}
-		
-	}
-	
-	private class WrappedItem<V> {
-		V value;
-		
-		WrappedItem(V item){
-			value = item;
+			return items.containsKey(item);
 		}
 	}
 }
@@ -1,6 +1,7 @@
 package world.info.minorcline;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -27,6 +28,8 @@ public class HashPileTest {
         testResults.put("testAddTwoCheckSize", testAddTwoCheckSize());
         testResults.put("testAddTworemoveExactly1CheckSize", testAddTworemoveExactly1CheckSize());
         testResults.put("testAddTwoEqualNotSame", testAddTwoEqualNotSame());
+        testResults.put("testIterateEmpty", testIterateEmpty());
+        testResults.put("testIterateAfterRemoveExactly", testIterateAfterRemoveExactly());
 
         for (Entry<String, Boolean> e : testResults.entrySet()){
             if (e.getValue() == false){
@@ -94,6 +97,32 @@ public class HashPileTest {
 		sut.add(t);
 		return sut.size() == 2;
     }
-    
 
+    public boolean testIterateEmpty() {
+    	sut.clear();
+    	sut.add("aa");
+    	sut.removeExactly("aa");
+    	return !sut.iterator().hasNext() && !new HashPile<String>().iterator().hasNext();
+    }
+    
+    public boolean testIterateAfterRemoveExactly() {
+    	String s = "abcd";
+    	String t = "ab";
+    	t = t + "cd";
+    	sut.clear();
+    	sut.add(s);
+    	sut.add(t);
+    	sut.add(t);
+    	sut.add("bb");
+    	sut.removeExactly(s);
+    	int count = 0;
+    	Iterator<String> itr = sut.iterator();
+    	while (itr.hasNext()) {
+    		String next = itr.next();
+    		if (next == s)
+    			return false;
+    		count++;
+    	}
+    	return count == 3 && sut.size() == 3 && sut.contains(t) && !sut.contains(s);
+    }
 }
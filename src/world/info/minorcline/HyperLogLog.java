@@ -0,0 +1,78 @@
+package world.info.minorcline;
+
+/**
+ * Estimates how many distinct items have been seen, in a fixed amount of memory, however many there are.
+ * Items are given by a 64-bit hash. The hash picks one of 2^p registers, which keeps the longest run of
+ * leading zero bits seen in the rest of the hashes it got; many distinct items make long runs likely.
+ * The estimate is within about 1.04 / sqrt(2^p) of the true count, under 1% with the default of 2^14
+ * registers, and items seen again do not change it.
+ *
+ * Used by FootprintEstimator to count the distinct subsequences of a sample of the input.
+ */
+
+import java.util.Arrays;
+
+public class HyperLogLog {
+	private static final int DEFAULT_PRECISION = 14;
+
+	private int precision;
+	private byte[] registers;
+
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * @param precision the log2 of the number of registers, from 4 to 18.
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 18)
+			throw new IllegalArgumentException("precision must be from 4 to 18.");
+		this.precision = precision;
+		registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Counts one sighting of an item. The hash is mixed first, so it need not be well distributed.
+	 */
+	public void add(long hash) {
+		long h = mix(hash);
+		int register = (int) (h >>> (64 - precision));
+		//the marker bit bounds the run of zeros when the rest of the hash is all zeros
+		int rank = Long.numberOfLeadingZeros((h << precision) | (1L << (precision - 1))) + 1;
+		if (rank > registers[register])
+			registers[register] = (byte) rank;
+	}
+
+	/**
+	 * Estimates the number of distinct items seen.
+	 */
+	public long estimate() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte r : registers) {
+			sum += Math.scalb(1.0, -r);
+			if (r == 0)
+				zeros++;
+		}
+		double alpha = 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		//few items leave many registers empty, and counting them is the better estimate
+		if (estimate <= 2.5 * m && zeros > 0)
+			estimate = m * Math.log((double) m / zeros);
+		return Math.round(estimate);
+	}
+
+	public void clear() {
+		Arrays.fill(registers, (byte) 0);
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		return h ^ (h >>> 33);
+	}
+}
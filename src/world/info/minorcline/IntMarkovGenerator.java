@@ -0,0 +1,548 @@
+package world.info.minorcline;
+
+/**
+ * A Markov chain generator specialized for primitive int symbols, such as the chars of a text file.
+ * Follows the same contract as MarkovGenerator (addIterator, finalizeGenerator, generate), but keeps
+ * its contexts and suffix counts in flat primitive arrays instead of a Trie of MarkovMaps, so no
+ * object is allocated per symbol while training or generating.
+ *
+ * Contexts are stored back to back in one int array and found through an open-addressing hash table.
+ * Suffix counts are kept in a second open-addressing table keyed by (context, suffix).
+ * Finalizing groups the suffixes of each context together with their cumulative counts
+ * into an IntMarkovModel, so a random suffix is chosen by binary search, and links each suffix
+ * to the context it leads to, so generating a symbol takes no context lookup.
+ * The model can be finalized into an OffHeapArena, so that a large model adds nothing to the heap.
+ */
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+public class IntMarkovGenerator {
+
+	private static final int EMPTY = -1;
+	private static final long EMPTY_KEY = -1L;
+	private static final int INITIAL_CAPACITY = 1 << 10;
+	private static final int TEXT_BUFFER_SIZE = 1 << 13;
+
+	private int order;
+	/**31 raised to the power order - 1; the weight of the oldest symbol in a context hash.*/
+	private int outWeight;
+	private int[] firstInputSubseq;
+	/**Volatile so that a model finalized on one thread is fully visible to sessions on others.*/
+	private volatile boolean finalized;
+
+	/**Open-addressing table of context ids. Symbols of context i are at ctxSymbols[i*order, (i+1)*order).*/
+	private int[] ctxTable;
+	private int[] ctxHashes;
+	private int[] ctxSymbols;
+	private int ctxCount;
+
+	/**Open-addressing table of suffix counts, keyed by context id in the high word and suffix in the low word.*/
+	private long[] transKeys;
+	private int[] transCounts;
+	private int transCount;
+
+	/**The read-only tables built by finalizeGenerator().*/
+	private IntMarkovModel model;
+
+	/**The session used by generate().*/
+	private IntMarkovSession defaultSession;
+
+	/**
+	 * Creates a new, empty Markov chain over int symbols.
+	 * @param order the order of the Markov model; length of observed subsequences
+	 */
+	public IntMarkovGenerator(int order) {
+		this(order, true);
+	}
+
+	/**
+	 * Creates a finalized generator which generates from an existing model, such as one
+	 * opened with <code>load()</code>.
+	 */
+	public IntMarkovGenerator(IntMarkovModel model) {
+		this(model.order(), false);
+		ctxCount = model.size();
+		firstInputSubseq = model.firstInputSubseq();
+		this.model = model;
+		startGenerating();
+	}
+
+	/**
+	 * @param training whether to allocate the tables that count input, which a generator wrapping
+	 * a finished model never uses.
+	 */
+	private IntMarkovGenerator(int order, boolean training) {
+		if (order < 1)
+			throw new IllegalArgumentException("Order must be at least 1.");
+		this.order = order;
+		outWeight = 1;
+		for (int i = 1; i < order; i++) outWeight *= 31;
+		finalized = false;
+		ctxCount = 0;
+		transCount = 0;
+		if (!training)
+			return;
+		ctxTable = new int[INITIAL_CAPACITY];
+		Arrays.fill(ctxTable, EMPTY);
+		ctxHashes = new int[INITIAL_CAPACITY / 2];
+		ctxSymbols = new int[INITIAL_CAPACITY / 2 * order];
+		transKeys = new long[INITIAL_CAPACITY];
+		Arrays.fill(transKeys, EMPTY_KEY);
+		transCounts = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Opens a model file written by <code>save()</code> without reading it into the heap.
+	 * @return a finalized generator backed by the memory-mapped file.
+	 * @throws IOException if the file cannot be read or is not a model file.
+	 */
+	public static IntMarkovGenerator load(Path file) throws IOException {
+		return new IntMarkovGenerator(IntMarkovModel.load(file));
+	}
+
+	/**
+	 * Writes the finalized model to a file, to be reopened later with <code>load()</code>.
+	 * @throws IllegalStateException if IntMarkovGenerator has not been finalized.
+	 */
+	public void save(Path file) throws IOException, IllegalStateException {
+		if (!finalized)
+			throw new IllegalStateException("IntMarkovGenerator has not yet been finalized.");
+		model.save(file);
+	}
+
+	/**
+	 * Reads all the input from an iterator and adds that information to the Markov chain,
+	 * unless the generator has already been finalized. The first input ever added supplies
+	 * the subsequence that generation starts from.
+	 * @param dataIterator iterates through the next input sequence.
+	 * @return true if the information from the iterator was added to the model, or false if the model
+	 * was not changed as a result of the call.
+	 * @throws IllegalStateException when <code>dataIterator</code> does not provide enough data to
+	 * furnish the generator.
+	 */
+	public boolean addIterator(PrimitiveIterator.OfInt dataIterator) throws IllegalStateException {
+		if (finalized)
+			return false;
+		int[] window = new int[order];
+		int i = 0;
+		while (dataIterator.hasNext() && i < order) {
+			window[i++] = dataIterator.nextInt();
+		}
+		if (i < order)
+			throw new IllegalStateException("Not enough data provided. Obtained only " + i + " items.");
+		if (firstInputSubseq == null)
+			firstInputSubseq = window.clone();
+
+		int head = 0;
+		int hash = IntMarkovModel.hash(window);
+		while (dataIterator.hasNext()) {
+			int nextItem = dataIterator.nextInt();
+			int ctx = findContext(window, head, hash, true);
+			addTransition(ctx, nextItem, 1);
+			//shift left
+			hash = IntMarkovModel.roll(hash, window[head], nextItem, outWeight);
+			window[head] = nextItem;
+			head = (head + 1 == order) ? 0 : head + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads all the remaining text from a file and adds that information to the Markov chain,
+	 * unless the generator has already been finalized. Equivalent to
+	 * <code>addIterator(text.chars())</code>, but reads the chars in bulk.
+	 * @return true if the text was added to the model, or false if the model was not changed.
+	 * @throws IllegalStateException when <code>text</code> holds fewer than <code>order</code> chars.
+	 */
+	public boolean addText(TextFileIterator text) throws IllegalStateException {
+		char[] chars = new char[TEXT_BUFFER_SIZE];
+		return addSymbols((buffer, offset, length) -> {
+			int n = text.read(chars, 0, Math.min(length, chars.length));
+			for (int i = 0; i < n; i++) buffer[offset + i] = chars[i];
+			return n;
+		});
+	}
+
+	/**
+	 * Reads all the symbols of a TextPipeline and adds that information to the Markov chain,
+	 * unless the generator has already been finalized. Equivalent to <code>addIterator(text)</code>,
+	 * but takes the symbols a chunk at a time, while the pipeline's threads read and decode the next ones.
+	 * @return true if the symbols were added to the model, or false if the model was not changed.
+	 * @throws IllegalStateException when <code>text</code> holds fewer than <code>order</code> symbols.
+	 */
+	public boolean addText(TextPipeline text) throws IllegalStateException {
+		return addSymbols(text::read);
+	}
+
+	/**
+	 * A source of symbols read in bulk, such as a file's text.
+	 */
+	private interface SymbolReader {
+		/**
+		 * Reads up to <code>length</code> symbols into <code>buffer</code>, starting at <code>offset</code>.
+		 * @return the number of symbols read, or -1 at the end of the input.
+		 */
+		int read(int[] buffer, int offset, int length);
+	}
+
+	/**
+	 * The loop shared by the bulk <code>addText()</code> methods: like <code>addIterator()</code>, but
+	 * takes the symbols a buffer at a time.
+	 */
+	private boolean addSymbols(SymbolReader text) throws IllegalStateException {
+		if (finalized)
+			return false;
+		int[] buffer = new int[Math.max(TEXT_BUFFER_SIZE, order)];
+		int n = 0;
+		int read;
+		while (n < order && (read = text.read(buffer, n, buffer.length - n)) > 0)
+			n += read;
+		if (n < order)
+			throw new IllegalStateException("Not enough data provided. Obtained only " + n + " items.");
+		int[] window = Arrays.copyOf(buffer, order);
+		if (firstInputSubseq == null)
+			firstInputSubseq = window.clone();
+
+		int head = 0;
+		int hash = IntMarkovModel.hash(window);
+		//the first buffer goes on from just after the window
+		int j = order;
+		do {
+			for (; j < n; j++) {
+				int nextItem = buffer[j];
+				addTransition(findContext(window, head, hash, true), nextItem, 1);
+				//shift left
+				hash = IntMarkovModel.roll(hash, window[head], nextItem, outWeight);
+				window[head] = nextItem;
+				head = (head + 1 == order) ? 0 : head + 1;
+			}
+			j = 0;
+		} while ((n = text.read(buffer, 0, buffer.length)) > 0);
+		return true;
+	}
+
+	/**
+	 * Adds all the counts gathered by another generator of the same order to this one, as if its
+	 * input had been given to this generator's <code>addIterator()</code>. Used to combine partial
+	 * models that were trained in parallel. If this generator has seen no input yet, it also takes
+	 * over the other generator's first subsequence.
+	 * @param other an unfinalized generator of the same order. It must not be used afterwards.
+	 * @return true if the information from <code>other</code> was added to the model, or false if
+	 * this generator has already been finalized.
+	 * @throws IllegalArgumentException if the orders differ or <code>other</code> is finalized.
+	 */
+	public boolean merge(IntMarkovGenerator other) throws IllegalArgumentException {
+		if (finalized)
+			return false;
+		if (other.order != order || other.finalized)
+			throw new IllegalArgumentException("Can only merge an unfinalized IntMarkovGenerator of the same order.");
+		if (firstInputSubseq == null && other.firstInputSubseq != null)
+			firstInputSubseq = other.firstInputSubseq.clone();
+
+		int[] remap = new int[other.ctxCount];
+		int[] window = new int[order];
+		for (int c = 0; c < other.ctxCount; c++) {
+			System.arraycopy(other.ctxSymbols, c * order, window, 0, order);
+			remap[c] = findContext(window, 0, other.ctxHashes[c], true);
+		}
+		for (int slot = 0; slot < other.transKeys.length; slot++) {
+			long key = other.transKeys[slot];
+			if (key != EMPTY_KEY)
+				addTransition(remap[(int) (key >>> 32)], (int) key, other.transCounts[slot]);
+		}
+		return true;
+	}
+
+	/**
+	 * Prepares for generation. Must be called before <code>generate()</code> can be used.
+	 * @throws IllegalStateException if not enough information has been offered through
+	 * <code>addIterator()</code>.
+	 */
+	public void finalizeGenerator() throws IllegalStateException {
+		finalizeGenerator(null);
+	}
+
+	/**
+	 * Prepares for generation, keeping the model's tables in <code>arena</code> instead of the heap.
+	 * The training tables are still held in the heap until the model has been built.
+	 * @param arena the arena to allocate the model from, or null to keep it in the heap.
+	 * @throws IllegalStateException if not enough information has been offered through
+	 * <code>addIterator()</code>.
+	 */
+	public void finalizeGenerator(OffHeapArena arena) throws IllegalStateException {
+		if (finalized)
+			return;
+		if (transCount == 0)
+			throw new IllegalStateException("Not enough information provided through addIterator() to finalize IntMarkovGenerator.");
+
+		int[] suffixStart = new int[ctxCount + 1];
+		for (long key : transKeys) {
+			if (key != EMPTY_KEY)
+				suffixStart[(int) (key >>> 32) + 1]++;
+		}
+		for (int c = 0; c < ctxCount; c++) {
+			suffixStart[c + 1] += suffixStart[c];
+		}
+
+		//Pack symbol and count into one long so that sorting a context's range orders it by symbol.
+		long[] packed = new long[transCount];
+		int[] cursor = Arrays.copyOf(suffixStart, ctxCount);
+		for (int slot = 0; slot < transKeys.length; slot++) {
+			long key = transKeys[slot];
+			if (key != EMPTY_KEY) {
+				int ctx = (int) (key >>> 32);
+				packed[cursor[ctx]++] = ((long) (int) key << 32) | (transCounts[slot] & 0xffffffffL);
+			}
+		}
+
+		int[] suffixSymbols = new int[transCount];
+		int[] suffixCumulative = new int[transCount];
+		for (int c = 0; c < ctxCount; c++) {
+			int from = suffixStart[c];
+			int to = suffixStart[c + 1];
+			Arrays.sort(packed, from, to);
+			int total = 0;
+			for (int j = from; j < to; j++) {
+				total += (int) packed[j];
+				suffixSymbols[j] = (int) (packed[j] >> 32);
+				suffixCumulative[j] = total;
+			}
+		}
+
+		model = new IntMarkovModel(order, firstInputSubseq, ctxCount, table(ctxTable, ctxTable.length, arena),
+				table(ctxHashes, ctxCount, arena), table(ctxSymbols, ctxCount * order, arena),
+				table(suffixStart, suffixStart.length, arena), table(suffixSymbols, transCount, arena),
+				table(suffixCumulative, transCount, arena), null);
+		model.linkSuccessors(arena);
+		//The training tables are no longer needed once the model is finalized.
+		ctxTable = null;
+		ctxHashes = null;
+		ctxSymbols = null;
+		transKeys = null;
+		transCounts = null;
+		startGenerating();
+	}
+
+	/**
+	 * Gets the first <code>length</code> values of an array as a model table, copied into
+	 * <code>arena</code> if there is one.
+	 */
+	private static IntBuffer table(int[] values, int length, OffHeapArena arena) {
+		if (arena == null)
+			return IntBuffer.wrap(values, 0, length).slice();
+		return arena.copyOf(values, length);
+	}
+
+	private void startGenerating() {
+		finalized = true;
+		defaultSession = model.newSession(new SplittableRandom());
+	}
+
+	/**
+	 * Gets the number of distinct subsequences of length <code>order</code> in the entire input
+	 * which are followed by at least one item.
+	 * @return the number of distinct contexts in the model.
+	 */
+	public int size() {
+		return ctxCount;
+	}
+
+	/**
+	 * Projects the heap a generator of order <code>order</code> would take for an input with the given
+	 * numbers of distinct contexts and suffixes, such as those estimated by a FootprintEstimator.
+	 * The footprint holds the tables of the finalized model, kept in the heap, and its peak is the most
+	 * heap taken while training or finalizing, when the training tables grow by doubling and are still
+	 * alive while the model is built from them.
+	 * @param contexts the distinct subsequences of length <code>order</code> followed by at least one symbol.
+	 * @param suffixes the distinct (context, suffix) pairs.
+	 */
+	public static ModelFootprint projectFootprint(int order, long contexts, long suffixes) {
+		long ctxTableLength = capacity(INITIAL_CAPACITY, 2 * contexts);
+		long ctxCapacity = capacity(INITIAL_CAPACITY / 2, contexts);
+		long transLength = capacity(INITIAL_CAPACITY, 2 * suffixes);
+		long training = 4 * ctxTableLength + 4 * ctxCapacity * (1 + order) + 12 * transLength;
+		//a table that doubles is briefly alive at both sizes
+		long growth = Math.max(6 * transLength, Math.max(2 * ctxTableLength, 2 * ctxCapacity * (1 + order)));
+		//suffix starts, the cursor into them, the packed suffixes, and the suffix symbols, counts and successors
+		long finalizing = 8 * (contexts + 1) + 8 * suffixes + 12 * suffixes;
+
+		ModelFootprint footprint = new ModelFootprint(order, contexts, contexts, suffixes, suffixes);
+		footprint.add("context table", ModelFootprint.array(ctxTableLength, 4));
+		footprint.add("context hashes", ModelFootprint.array(ctxCapacity, 4));
+		footprint.add("context symbols", ModelFootprint.array(ctxCapacity * order, 4));
+		footprint.add("suffix starts", ModelFootprint.array(contexts + 1, 4));
+		footprint.add("suffix symbols", ModelFootprint.array(suffixes, 4));
+		footprint.add("suffix counts", ModelFootprint.array(suffixes, 4));
+		footprint.add("successors", ModelFootprint.array(suffixes, 4));
+		footprint.setPeakBytes(Math.max(training + growth, training + finalizing));
+		return footprint;
+	}
+
+	/**
+	 * Gets the length a table starting at <code>initial</code> slots reaches by doubling until it holds
+	 * <code>needed</code>.
+	 */
+	private static long capacity(long initial, long needed) {
+		long capacity = initial;
+		while (capacity < needed) capacity *= 2;
+		return capacity;
+	}
+
+	/**
+	 * Gets the finalized model, which can be shared by any number of sessions.
+	 * @throws IllegalStateException if IntMarkovGenerator has not been finalized.
+	 */
+	public IntMarkovModel model() throws IllegalStateException {
+		if (!finalized)
+			throw new IllegalStateException("IntMarkovGenerator has not yet been finalized.");
+		return model;
+	}
+
+	/**
+	 * Starts a new, independent stream of output from the finalized model, drawing random
+	 * numbers from <code>random</code>. Sessions may be used on different threads at the same time.
+	 * @throws IllegalStateException if IntMarkovGenerator has not been finalized.
+	 */
+	public IntMarkovSession newSession(RandomGenerator random) throws IllegalStateException {
+		return model().newSession(random);
+	}
+
+	/**
+	 * Gets the order of this model.
+	 * @return the length of the observed subsequences.
+	 */
+	public int order() {
+		return order;
+	}
+
+	/**
+	 * Uses the complete Markov model to generate a random symbol based on the model
+	 * and the previous sequence of symbols generated. When the previous sequence has no
+	 * known successor, generation restarts from the first subsequence of the input.
+	 * Not thread-safe; use an IntMarkovSession per thread instead.
+	 * @throws IllegalStateException if IntMarkovGenerator has not been finalized.
+	 */
+	public int generate() throws IllegalStateException {
+		if (!finalized)
+			throw new IllegalStateException("IntMarkovGenerator has not yet been finalized.");
+		return defaultSession.generate();
+	}
+
+	/**
+	 * Generates <code>length</code> symbols into <code>buffer</code>, starting at <code>offset</code>,
+	 * continuing from the symbols generated before.
+	 * Not thread-safe; use an IntMarkovSession per thread instead.
+	 * @throws IllegalStateException if IntMarkovGenerator has not been finalized.
+	 */
+	public void generate(int[] buffer, int offset, int length) throws IllegalStateException {
+		if (!finalized)
+			throw new IllegalStateException("IntMarkovGenerator has not yet been finalized.");
+		defaultSession.generate(buffer, offset, length);
+	}
+
+	/**
+	 * Looks up the context held in the ring buffer <code>window</code>, whose oldest symbol is at
+	 * <code>head</code>.
+	 * @param hash the rolling hash of the context.
+	 * @param add whether to add the context when it is not yet known.
+	 * @return the id of the context, or EMPTY if it is unknown and <code>add</code> is false.
+	 */
+	private int findContext(int[] window, int head, int hash, boolean add) {
+		int mask = ctxTable.length - 1;
+		int slot = IntMarkovModel.mix(hash) & mask;
+		int ctx;
+		while ((ctx = ctxTable[slot]) != EMPTY) {
+			if (ctxHashes[ctx] == hash && sameContext(ctx, window, head))
+				return ctx;
+			slot = (slot + 1) & mask;
+		}
+		if (!add)
+			return EMPTY;
+
+		ctx = ctxCount++;
+		if (ctx == ctxHashes.length) {
+			ctxHashes = Arrays.copyOf(ctxHashes, ctx * 2);
+			ctxSymbols = Arrays.copyOf(ctxSymbols, ctx * 2 * order);
+		}
+		ctxHashes[ctx] = hash;
+		int base = ctx * order;
+		System.arraycopy(window, head, ctxSymbols, base, order - head);
+		System.arraycopy(window, 0, ctxSymbols, base + order - head, head);
+		ctxTable[slot] = ctx;
+		if (ctxCount * 2 > ctxTable.length)
+			growContextTable();
+		return ctx;
+	}
+
+	private boolean sameContext(int ctx, int[] window, int head) {
+		int base = ctx * order;
+		for (int i = 0; i < order; i++) {
+			int w = head + i;
+			if (w >= order) w -= order;
+			if (ctxSymbols[base + i] != window[w])
+				return false;
+		}
+		return true;
+	}
+
+	private void growContextTable() {
+		int[] table = new int[ctxTable.length * 2];
+		Arrays.fill(table, EMPTY);
+		int mask = table.length - 1;
+		for (int ctx = 0; ctx < ctxCount; ctx++) {
+			int slot = IntMarkovModel.mix(ctxHashes[ctx]) & mask;
+			while (table[slot] != EMPTY) slot = (slot + 1) & mask;
+			table[slot] = ctx;
+		}
+		ctxTable = table;
+	}
+
+	private void addTransition(int ctx, int suffix, int count) {
+		long key = ((long) ctx << 32) | (suffix & 0xffffffffL);
+		int mask = transKeys.length - 1;
+		int slot = (int) mix(key) & mask;
+		long k;
+		while ((k = transKeys[slot]) != EMPTY_KEY) {
+			if (k == key) {
+				transCounts[slot] += count;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		transKeys[slot] = key;
+		transCounts[slot] = count;
+		if (++transCount * 2 > transKeys.length)
+			growTransitionTable();
+	}
+
+	private void growTransitionTable() {
+		long[] keys = new long[transKeys.length * 2];
+		int[] counts = new int[keys.length];
+		Arrays.fill(keys, EMPTY_KEY);
+		int mask = keys.length - 1;
+		for (int i = 0; i < transKeys.length; i++) {
+			long key = transKeys[i];
+			if (key == EMPTY_KEY) continue;
+			int slot = (int) mix(key) & mask;
+			while (keys[slot] != EMPTY_KEY) slot = (slot + 1) & mask;
+			keys[slot] = key;
+			counts[slot] = transCounts[i];
+		}
+		transKeys = keys;
+		transCounts = counts;
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		return h ^ (h >>> 33);
+	}
+}
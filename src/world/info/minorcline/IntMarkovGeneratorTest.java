@@ -0,0 +1,274 @@
+package world.info.minorcline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PrimitiveIterator;
+import java.util.SplittableRandom;
+
+public class IntMarkovGeneratorTest {
+	private IntMarkovGenerator sut;
+	private boolean pass = true;
+
+	public static void main(String[] args){
+		IntMarkovGeneratorTest test = new IntMarkovGeneratorTest();
+		test.runTests();
+	}
+
+	public void runTests(){
+		Map<String, Boolean> testResults = new HashMap<>();
+
+		testResults.put("testSizeAlternating", testSizeAlternating());
+		testResults.put("testGenerateAlternating", testGenerateAlternating());
+		testResults.put("testGenerateRestartsAtDeadEnd", testGenerateRestartsAtDeadEnd());
+		testResults.put("testGenerateOnlySeenSuffixes", testGenerateOnlySeenSuffixes());
+		testResults.put("testNotEnoughData", testNotEnoughData());
+		testResults.put("testFinalizeEmpty", testFinalizeEmpty());
+		testResults.put("testAddAfterFinalize", testAddAfterFinalize());
+		testResults.put("testSaveAndLoad", testSaveAndLoad());
+		testResults.put("testLoadRejectsCorruptHeader", testLoadRejectsCorruptHeader());
+		testResults.put("testLoadVersion1", testLoadVersion1());
+		testResults.put("testOffHeapMatchesHeap", testOffHeapMatchesHeap());
+		testResults.put("testArenaPadsTables", testArenaPadsTables());
+		testResults.put("testBulkTextMatchesGenerate", testBulkTextMatchesGenerate());
+
+		for (Entry<String, Boolean> e : testResults.entrySet()){
+			if (e.getValue() == false){
+				System.out.println("Test failure: " + e.getKey());
+				pass = false;
+			}
+		}
+		if (pass)
+			System.out.println("Passed all tests.");
+	}
+
+	private static PrimitiveIterator.OfInt chars(String s){
+		return s.chars().iterator();
+	}
+
+	public boolean testSizeAlternating(){
+		sut = new IntMarkovGenerator(2);
+		sut.addIterator(chars("abababab"));
+		return sut.size() == 2;
+	}
+
+	public boolean testGenerateAlternating(){
+		sut = new IntMarkovGenerator(1);
+		sut.addIterator(chars("abababab"));
+		sut.finalizeGenerator();
+		int previous = 'a';
+		for (int i = 0; i < 100; i++){
+			int next = sut.generate();
+			if (next == previous)
+				return false;
+			previous = next;
+		}
+		return true;
+	}
+
+	public boolean testGenerateRestartsAtDeadEnd(){
+		sut = new IntMarkovGenerator(2);
+		sut.addIterator(chars("abcd"));
+		sut.finalizeGenerator();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 8; i++)
+			sb.append((char) sut.generate());
+		return "cdabcdab".equals(sb.toString());
+	}
+
+	public boolean testGenerateOnlySeenSuffixes(){
+		sut = new IntMarkovGenerator(1);
+		sut.addIterator(chars("axaxayaz"));
+		sut.finalizeGenerator();
+		for (int i = 0; i < 1000; i++){
+			int next = sut.generate();
+			if ("axyz".indexOf(next) < 0)
+				return false;
+		}
+		return true;
+	}
+
+	public boolean testNotEnoughData(){
+		sut = new IntMarkovGenerator(5);
+		try{
+			sut.addIterator(chars("abc"));
+		} catch (IllegalStateException e){
+			return true;
+		}
+		return false;
+	}
+
+	public boolean testFinalizeEmpty(){
+		sut = new IntMarkovGenerator(3);
+		try{
+			sut.finalizeGenerator();
+		} catch (IllegalStateException e){
+			return true;
+		}
+		return false;
+	}
+
+	public boolean testAddAfterFinalize(){
+		sut = new IntMarkovGenerator(1);
+		sut.addIterator(chars("abab"));
+		sut.finalizeGenerator();
+		return !sut.addIterator(chars("cdcd"));
+	}
+
+	public boolean testSaveAndLoad(){
+		sut = new IntMarkovGenerator(2);
+		sut.addIterator(chars("abcd"));
+		sut.finalizeGenerator();
+		try{
+			Path file = Files.createTempFile("IntMarkovGeneratorTest", ".model");
+			file.toFile().deleteOnExit();
+			sut.save(file);
+			IntMarkovGenerator loaded = IntMarkovGenerator.load(file);
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 8; i++)
+				sb.append((char) loaded.generate());
+			return loaded.size() == sut.size() && "cdabcdab".equals(sb.toString());
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	//A version 1 file is a version 2 file without the successor table at its end, which is rebuilt on loading.
+	public boolean testLoadVersion1(){
+		sut = new IntMarkovGenerator(3);
+		sut.addIterator(new String(MarkovBenchmark.syntheticCorpus(1 << 14, 6)).chars().iterator());
+		sut.finalizeGenerator();
+		try{
+			Path file = Files.createTempFile("IntMarkovGeneratorTest", ".model");
+			file.toFile().deleteOnExit();
+			sut.save(file);
+			byte[] saved = Files.readAllBytes(file);
+			int suffixCount = ByteBuffer.wrap(saved).order(ByteOrder.LITTLE_ENDIAN).getInt(20);
+			byte[] bytes = Arrays.copyOf(saved, saved.length - 4 * suffixCount);
+			ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, 1);
+			Files.write(file, bytes);
+			IntMarkovModel v1 = IntMarkovModel.load(file);
+			int[] expected = new int[5000];
+			int[] actual = new int[5000];
+			sut.newSession(new SplittableRandom(12)).generate(expected, 0, expected.length);
+			v1.newSession(new SplittableRandom(12)).generate(actual, 0, actual.length);
+			return v1.size() == sut.size() && Arrays.equals(expected, actual);
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	//Header ints: magic, version, order, context count, hash table length, suffix count.
+	public boolean testLoadRejectsCorruptHeader(){
+		sut = new IntMarkovGenerator(2);
+		sut.addIterator(chars("abcdabce"));
+		sut.finalizeGenerator();
+		try{
+			Path file = Files.createTempFile("IntMarkovGeneratorTest", ".model");
+			file.toFile().deleteOnExit();
+			sut.save(file);
+			byte[] saved = Files.readAllBytes(file);
+			int tableLength = ByteBuffer.wrap(saved).order(ByteOrder.LITTLE_ENDIAN).getInt(16);
+			int[][] corruptions = {{2, 0}, {2, -1}, {3, -1}, {4, tableLength - 1}, {4, sut.size()}, {5, -1}};
+			for (int[] corruption : corruptions){
+				byte[] bytes = saved.clone();
+				ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4 * corruption[0], corruption[1]);
+				Files.write(file, bytes);
+				try{
+					IntMarkovGenerator.load(file);
+					return false;
+				} catch (IOException e){
+				}
+			}
+			//one more context of order 2 takes 4 more ints, and a table 4 ints shorter keeps the size right
+			byte[] bytes = saved.clone();
+			ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(12, sut.size() + 1).putInt(16, tableLength - 4);
+			Files.write(file, bytes);
+			try{
+				IntMarkovGenerator.load(file);
+				return false;
+			} catch (IOException e){
+			}
+			Files.write(file, saved);
+			return IntMarkovGenerator.load(file).size() == sut.size();
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	//A small block size puts the larger tables in buffers of their own and the smaller ones in blocks.
+	public boolean testOffHeapMatchesHeap(){
+		String input = "the quick brown fox jumps over the lazy dog, then the lazy fox sleeps";
+		IntMarkovGenerator heap = new IntMarkovGenerator(2);
+		heap.addIterator(chars(input));
+		heap.finalizeGenerator();
+		OffHeapArena arena = new OffHeapArena(1 << 10);
+		sut = new IntMarkovGenerator(2);
+		sut.addIterator(chars(input));
+		sut.finalizeGenerator(arena);
+		IntMarkovSession expected = heap.newSession(new SplittableRandom(5));
+		IntMarkovSession actual = sut.newSession(new SplittableRandom(5));
+		for (int i = 0; i < 1000; i++){
+			if (expected.generate() != actual.generate())
+				return false;
+		}
+		return sut.size() == heap.size() && arena.bytesAllocated() > 0;
+	}
+
+	//Tables of 3 ints are padded to 16 bytes, so four fill a 64-byte block, and none overlaps another.
+	public boolean testArenaPadsTables(){
+		try{
+			new OffHeapArena(1001);
+			return false;
+		} catch (IllegalArgumentException e){
+		}
+		OffHeapArena arena = new OffHeapArena(64);
+		IntBuffer[] tables = new IntBuffer[10];
+		for (int t = 0; t < tables.length; t++){
+			tables[t] = arena.allocateInts(3);
+			for (int i = 0; i < 3; i++) tables[t].put(i, 3 * t + i);
+		}
+		for (int t = 0; t < tables.length; t++){
+			for (int i = 0; i < 3; i++){
+				if (tables[t].get(i) != 3 * t + i)
+					return false;
+			}
+		}
+		return arena.bytesAllocated() == 120 && arena.bytesReserved() == 192;
+	}
+
+	//Longer than one chunk, and with chars outside ASCII so that the channel has to encode them.
+	public boolean testBulkTextMatchesGenerate(){
+		sut = new IntMarkovGenerator(1);
+		sut.addIterator(chars("na\u00efve caf\u00e9 \ud83d\udc3b and a na\u00efve \ud83d\udc3b caf\u00e9"));
+		sut.finalizeGenerator();
+		int length = 20000;
+		IntMarkovSession single = sut.newSession(new SplittableRandom(9));
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			expected.append((char) single.generate());
+		try{
+			StringBuilder appended = new StringBuilder();
+			sut.newSession(new SplittableRandom(9)).generateText(length, appended);
+			ByteArrayOutputStream written = new ByteArrayOutputStream();
+			sut.newSession(new SplittableRandom(9)).generateText(length, Channels.newChannel(written), StandardCharsets.UTF_8);
+			int[] symbols = new int[length];
+			sut.newSession(new SplittableRandom(9)).generate(symbols, 0, length);
+			return expected.toString().equals(appended.toString())
+					&& expected.toString().equals(new String(written.toByteArray(), StandardCharsets.UTF_8))
+					&& expected.toString().equals(new String(symbols, 0, length));
+		} catch (IOException e){
+			return false;
+		}
+	}
+}
@@ -0,0 +1,335 @@
+package world.info.minorcline;
+
+/**
+ * The read-only tables of a finalized IntMarkovGenerator: the hash table of contexts and,
+ * for each context, its suffixes with their cumulative counts.
+ * Each (context, suffix) pair is also linked to the context it leads to, the context shifted by one
+ * symbol, so a session follows one link per symbol instead of hashing and looking up its context.
+ * The tables are held in IntBuffers, so the same model can live in heap arrays or be
+ * memory-mapped straight from a model file written by <code>save()</code>. A mapped model is
+ * ready as soon as <code>load()</code> returns, and its pages are shared by every process that
+ * maps the same file. The model is never modified, so it can serve any number of
+ * IntMarkovSessions on different threads at once.
+ *
+ * Model file layout, all ints little-endian:
+ * a header of MAGIC, VERSION, order, context count, hash table length and suffix count,
+ * then the first subsequence (order ints), the hash table, the context hashes,
+ * the context symbols (order ints per context), the suffix starts (one more than the contexts),
+ * the suffix symbols, the cumulative suffix counts and the successor of each suffix.
+ * Version 1 files have no successors; they are linked on the heap when loaded.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.random.RandomGenerator;
+
+public class IntMarkovModel {
+	/**"MKV1" in ASCII.*/
+	private static final int MAGIC = 0x4d4b5631;
+	private static final int VERSION = 2;
+	private static final int HEADER_INTS = 6;
+	private static final int EMPTY = -1;
+
+	private int order;
+	private int[] firstInputSubseq;
+	private int ctxCount;
+	private IntBuffer ctxTable;
+	private IntBuffer ctxHashes;
+	private IntBuffer ctxSymbols;
+	private IntBuffer suffixStart;
+	private IntBuffer suffixSymbols;
+	private IntBuffer suffixCumulative;
+	/**The id of the context each suffix leads to, or -1 if that context has no known successor.*/
+	private IntBuffer suffixNext;
+
+	IntMarkovModel(int order, int[] firstInputSubseq, int ctxCount, IntBuffer ctxTable, IntBuffer ctxHashes,
+			IntBuffer ctxSymbols, IntBuffer suffixStart, IntBuffer suffixSymbols, IntBuffer suffixCumulative,
+			IntBuffer suffixNext) {
+		this.order = order;
+		this.firstInputSubseq = firstInputSubseq;
+		this.ctxCount = ctxCount;
+		this.ctxTable = ctxTable;
+		this.ctxHashes = ctxHashes;
+		this.ctxSymbols = ctxSymbols;
+		this.suffixStart = suffixStart;
+		this.suffixSymbols = suffixSymbols;
+		this.suffixCumulative = suffixCumulative;
+		this.suffixNext = suffixNext;
+	}
+
+	/**
+	 * Gets the length of the contexts in this model.
+	 */
+	public int order() {
+		return order;
+	}
+
+	/**
+	 * Gets the number of distinct contexts in this model.
+	 */
+	public int size() {
+		return ctxCount;
+	}
+
+	/**
+	 * Gets the number of distinct (context, suffix) pairs in this model.
+	 */
+	public int suffixCount() {
+		return suffixSymbols.limit();
+	}
+
+	/**
+	 * Measures the tables of this model. Its contexts are found through a hash table rather than a trie,
+	 * so its nodes are its contexts and its edges are its suffixes, each of which links two contexts.
+	 */
+	public ModelFootprint footprint() {
+		ModelFootprint footprint = new ModelFootprint(order, ctxCount, ctxCount, suffixCount(), suffixCount());
+		footprint.add("context table", bytes(ctxTable));
+		footprint.add("context hashes", bytes(ctxHashes));
+		footprint.add("context symbols", bytes(ctxSymbols));
+		footprint.add("suffix starts", bytes(suffixStart));
+		footprint.add("suffix symbols", bytes(suffixSymbols));
+		footprint.add("suffix counts", bytes(suffixCumulative));
+		footprint.add("successors", bytes(suffixNext));
+		footprint.setOffHeap(ctxTable.isDirect());
+		return footprint;
+	}
+
+	/**
+	 * Gets the bytes a table takes: all of its backing array if it is in the heap, which may be longer
+	 * than the table when training left room to grow.
+	 */
+	private static long bytes(IntBuffer table) {
+		return table.hasArray() ? ModelFootprint.array(table.array().length, 4) : 4L * table.limit();
+	}
+
+	/**
+	 * Starts a new, independent stream of output from this model.
+	 * @param random the session's source of random numbers, such as a SplittableRandom.
+	 * A seeded generator gives a reproducible stream.
+	 */
+	public IntMarkovSession newSession(RandomGenerator random) {
+		return new IntMarkovSession(this, random);
+	}
+
+	/**
+	 * Gets the first subsequence of the input, which generation starts from and restarts from
+	 * at a dead end.
+	 */
+	int[] firstInputSubseq() {
+		return firstInputSubseq.clone();
+	}
+
+	/**
+	 * Looks up the context held in the ring buffer <code>window</code>, whose oldest symbol is at
+	 * <code>head</code>.
+	 * @param hash the hash of the context, as given by <code>hash()</code> and <code>roll()</code>.
+	 * @return the id of the context, or -1 if it is not in the model.
+	 */
+	int findContext(int[] window, int head, int hash) {
+		int mask = ctxTable.limit() - 1;
+		int slot = mix(hash) & mask;
+		int ctx;
+		while ((ctx = ctxTable.get(slot)) != EMPTY) {
+			if (ctxHashes.get(ctx) == hash && sameContext(ctx, window, head))
+				return ctx;
+			slot = (slot + 1) & mask;
+		}
+		return EMPTY;
+	}
+
+	private boolean sameContext(int ctx, int[] window, int head) {
+		int base = ctx * order;
+		for (int i = 0; i < order; i++) {
+			int w = head + i;
+			if (w >= order) w -= order;
+			if (ctxSymbols.get(base + i) != window[w])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the context of the first subsequence of the input, which a restart ends in.
+	 * @return the id of the context, or -1 if it has no known successor.
+	 */
+	int firstContext() {
+		return findContext(firstInputSubseq, 0, hash(firstInputSubseq));
+	}
+
+	/**
+	 * Chooses a suffix of the context with probability proportional to its observed count.
+	 * @return the index of the suffix, for <code>suffixSymbol()</code> and <code>successor()</code>.
+	 */
+	int randomSuffix(int ctx, RandomGenerator random) {
+		int from = suffixStart.get(ctx);
+		int to = suffixStart.get(ctx + 1) - 1;
+		int rand = random.nextInt(suffixCumulative.get(to));
+		//find the first suffix whose cumulative count exceeds rand
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (suffixCumulative.get(mid) > rand)
+				to = mid;
+			else
+				from = mid + 1;
+		}
+		return from;
+	}
+
+	int suffixSymbol(int suffix) {
+		return suffixSymbols.get(suffix);
+	}
+
+	/**
+	 * Gets the context that following the suffix leads to.
+	 * @return the id of the context, or -1 if it has no known successor.
+	 */
+	int successor(int suffix) {
+		return suffixNext.get(suffix);
+	}
+
+	/**
+	 * Links each suffix to the context it leads to, by looking up every context shifted by one symbol.
+	 * Must be called once, before the model is shared with any session.
+	 * @param arena the arena to keep the links in, or null to keep them in the heap.
+	 */
+	void linkSuccessors(OffHeapArena arena) {
+		int[] next = new int[suffixSymbols.limit()];
+		int[] window = new int[order];
+		//the oldest symbol of the shifted context is at index 1, after the suffix at index 0 wraps around
+		int head = order == 1 ? 0 : 1;
+		int outWeight = 1;
+		for (int i = 1; i < order; i++) outWeight *= 31;
+		for (int ctx = 0; ctx < ctxCount; ctx++) {
+			ctxSymbols.get(ctx * order, window);
+			int hash = ctxHashes.get(ctx);
+			int oldest = window[0];
+			for (int s = suffixStart.get(ctx); s < suffixStart.get(ctx + 1); s++) {
+				window[0] = suffixSymbols.get(s);
+				next[s] = findContext(window, head, roll(hash, oldest, window[0], outWeight));
+			}
+		}
+		suffixNext = arena == null ? IntBuffer.wrap(next) : arena.copyOf(next, next.length);
+	}
+
+	/**
+	 * Computes the polynomial hash of a context from scratch. Successive contexts are hashed by
+	 * rolling this value forward with <code>roll()</code>.
+	 */
+	static int hash(int[] context) {
+		int hash = 0;
+		for (int symbol : context) hash = hash * 31 + symbol;
+		return hash;
+	}
+
+	/**
+	 * Computes the hash of the context obtained by dropping the oldest symbol and appending a new one.
+	 * @param outWeight 31 raised to the power order - 1.
+	 */
+	static int roll(int hash, int out, int in, int outWeight) {
+		return (hash - out * outWeight) * 31 + in;
+	}
+
+	static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Writes this model to a file which <code>load()</code> can map back into memory.
+	 */
+	public void save(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			int[] header = {MAGIC, VERSION, order, ctxCount, ctxTable.limit(), suffixSymbols.limit()};
+			write(channel, IntBuffer.wrap(header));
+			write(channel, IntBuffer.wrap(firstInputSubseq));
+			write(channel, ctxTable);
+			write(channel, ctxHashes);
+			write(channel, ctxSymbols);
+			write(channel, suffixStart);
+			write(channel, suffixSymbols);
+			write(channel, suffixCumulative);
+			write(channel, suffixNext);
+		}
+	}
+
+	/**
+	 * Maps a model file written by <code>save()</code>. Nothing is copied onto the heap except
+	 * the first subsequence; the tables are read from the file's pages as they are needed.
+	 * Each table must be smaller than 2 GB.
+	 * @throws IOException if the file cannot be read or is not a model file.
+	 */
+	public static IntMarkovModel load(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_INTS * 4)
+				throw new IOException(file + " is not a Markov model file.");
+			IntBuffer header = map(channel, 0, HEADER_INTS);
+			int version = header.get(1);
+			if (header.get(0) != MAGIC || version < 1 || version > VERSION)
+				throw new IOException(file + " is not a Markov model file.");
+			int order = header.get(2);
+			int ctxCount = header.get(3);
+			int tableLength = header.get(4);
+			int suffixCount = header.get(5);
+			//a bad order or table length would make lookups index out of bounds, or probe a full table forever
+			if (order < 1 || ctxCount < 0 || suffixCount < 0 || Integer.bitCount(tableLength) != 1
+					|| tableLength <= ctxCount || (long) ctxCount * order > Integer.MAX_VALUE / 4)
+				throw new IOException(file + " has a corrupt header.");
+			long expected = 4L * (HEADER_INTS + order + tableLength + ctxCount + (long) ctxCount * order
+					+ ctxCount + 1 + (version == 1 ? 2L : 3L) * suffixCount);
+			if (channel.size() != expected)
+				throw new IOException(file + " is truncated or corrupt.");
+
+			long position = HEADER_INTS * 4L;
+			int[] first = new int[order];
+			map(channel, position, order).get(first);
+			position += 4L * order;
+			IntBuffer ctxTable = map(channel, position, tableLength);
+			position += 4L * tableLength;
+			IntBuffer ctxHashes = map(channel, position, ctxCount);
+			position += 4L * ctxCount;
+			IntBuffer ctxSymbols = map(channel, position, ctxCount * order);
+			position += 4L * ctxCount * order;
+			IntBuffer suffixStart = map(channel, position, ctxCount + 1);
+			position += 4L * (ctxCount + 1);
+			IntBuffer suffixSymbols = map(channel, position, suffixCount);
+			position += 4L * suffixCount;
+			IntBuffer suffixCumulative = map(channel, position, suffixCount);
+			position += 4L * suffixCount;
+			IntBuffer suffixNext = version == 1 ? null : map(channel, position, suffixCount);
+			IntMarkovModel model = new IntMarkovModel(order, first, ctxCount, ctxTable, ctxHashes, ctxSymbols,
+					suffixStart, suffixSymbols, suffixCumulative, suffixNext);
+			if (suffixNext == null)
+				model.linkSuccessors(null);
+			return model;
+		}
+	}
+
+	private static IntBuffer map(FileChannel channel, long position, int ints) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * ints)
+				.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	}
+
+	private static void write(FileChannel channel, IntBuffer ints) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		IntBuffer source = ints.duplicate();
+		source.rewind();
+		while (source.hasRemaining()) {
+			bytes.clear();
+			IntBuffer chunk = bytes.asIntBuffer();
+			int n = Math.min(chunk.remaining(), source.remaining());
+			for (int i = 0; i < n; i++) chunk.put(source.get());
+			bytes.limit(n * 4);
+			while (bytes.hasRemaining()) channel.write(bytes);
+		}
+	}
+}
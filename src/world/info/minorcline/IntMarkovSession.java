@@ -0,0 +1,146 @@
+package world.info.minorcline;
+
+/**
+ * One stream of output from an IntMarkovModel.
+ * A session owns the context it generated most recently and its own source of random numbers,
+ * and only reads the model. Any number of sessions can therefore generate from the same model
+ * at once, one per thread, without locking. A single session is not thread-safe.
+ * The session keeps the id of its current context rather than its symbols: each suffix drawn is
+ * linked to the context it leads to, so generating a symbol costs the same at any order.
+ * Besides one symbol at a time, a session can generate in bulk into an int array, or as text into an
+ * Appendable or a byte channel, through buffers that are allocated once and then reused.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.random.RandomGenerator;
+
+public class IntMarkovSession {
+	/**Number of chars generated and written at a time.*/
+	private static final int CHUNK_SIZE = 1 << 13;
+
+	private IntMarkovModel model;
+	private int order;
+	private int[] firstInputSubseq;
+	/**The context of firstInputSubseq, which each restart ends in.*/
+	private int firstContext;
+	private RandomGenerator random;
+	/**The context of the most recent symbols, or -1 if it has no known successor.*/
+	private int context;
+	/**Index of the next symbol of firstInputSubseq to replay after a restart, or order when not restarting.*/
+	private int replay;
+	/**Reused by the bulk text methods; allocated on first use.*/
+	private char[] chars;
+	private CharBuffer charView;
+	private ByteBuffer bytes;
+	private CharsetEncoder encoder;
+
+	IntMarkovSession(IntMarkovModel model, RandomGenerator random) {
+		this.model = model;
+		this.random = random;
+		order = model.order();
+		firstInputSubseq = model.firstInputSubseq();
+		firstContext = model.firstContext();
+		context = firstContext;
+		replay = order;
+	}
+
+	/**
+	 * Uses the model to generate a random symbol based on the previous sequence of symbols
+	 * generated in this session. When the previous sequence has no known successor,
+	 * the session restarts from the first subsequence of the input.
+	 */
+	public int generate() {
+		if (replay == order && context >= 0) {
+			int suffix = model.randomSuffix(context, random);
+			context = model.successor(suffix);
+			return model.suffixSymbol(suffix);
+		}
+		if (replay == order)
+			replay = 0;
+		int next = firstInputSubseq[replay++];
+		if (replay == order)
+			context = firstContext;
+		return next;
+	}
+
+	/**
+	 * Generates <code>length</code> symbols into <code>buffer</code>, starting at <code>offset</code>.
+	 */
+	public void generate(int[] buffer, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) buffer[i] = generate();
+	}
+
+	/**
+	 * Generates <code>length</code> symbols of a char model and appends them to <code>out</code>,
+	 * a chunk of chars at a time. A Writer is given each chunk as a char array.
+	 */
+	public void generateText(int length, Appendable out) throws IOException {
+		allocateChars();
+		while (length > 0) {
+			int n = Math.min(length, CHUNK_SIZE);
+			for (int i = 0; i < n; i++) chars[i] = (char) generate();
+			if (out instanceof Writer)
+				((Writer) out).write(chars, 0, n);
+			else
+				out.append(charView, 0, n);
+			length -= n;
+		}
+	}
+
+	/**
+	 * Generates <code>length</code> symbols of a char model and writes them to <code>channel</code>,
+	 * encoded in <code>charset</code> a chunk at a time. Unmappable chars are replaced.
+	 */
+	public void generateText(int length, WritableByteChannel channel, Charset charset) throws IOException {
+		allocateChars();
+		if (encoder == null || !encoder.charset().equals(charset)) {
+			encoder = charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			bytes = ByteBuffer.allocate((int) Math.ceil(CHUNK_SIZE * (double) encoder.maxBytesPerChar()));
+		}
+		encoder.reset();
+		//a high surrogate left over from the last chunk starts the next one
+		int carried = 0;
+		while (length > 0 || carried > 0) {
+			int n = Math.min(length, CHUNK_SIZE - carried);
+			for (int i = carried; i < carried + n; i++) chars[i] = (char) generate();
+			length -= n;
+			boolean last = length == 0;
+			CharBuffer in = CharBuffer.wrap(chars, 0, carried + n);
+			bytes.clear();
+			encoder.encode(in, bytes, last);
+			if (last)
+				encoder.flush(bytes);
+			bytes.flip();
+			while (bytes.hasRemaining()) channel.write(bytes);
+			carried = in.remaining();
+			if (carried > 0)
+				in.get(chars, 0, carried);
+			if (last)
+				break;
+		}
+	}
+
+	/**
+	 * Generates <code>length</code> symbols of a token model and appends the text of each token,
+	 * as given by <code>vocabulary</code>, to <code>out</code>.
+	 */
+	public void generateTokens(int length, Vocabulary vocabulary, Appendable out) throws IOException {
+		for (int i = 0; i < length; i++) out.append(vocabulary.token(generate()));
+	}
+
+	private void allocateChars() {
+		if (chars == null) {
+			chars = new char[CHUNK_SIZE];
+			charView = CharBuffer.wrap(chars);
+		}
+	}
+}
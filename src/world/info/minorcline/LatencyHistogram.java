@@ -0,0 +1,79 @@
+package world.info.minorcline;
+
+/**
+ * Counts durations in buckets whose bounds are powers of two nanoseconds, so that recording one costs a
+ * single counter increment and the whole histogram is 64 counters, however many are recorded.
+ * Bucket i holds the durations of at least 2^(i-1) and less than 2^i nanoseconds, so a percentile
+ * is known to within a factor of two, which is enough to tell a regression or a slow tail.
+ * Any number of threads may record at once; the counters are LongAdders, which do not contend.
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+	private static final int BUCKETS = 64;
+
+	private LongAdder[] buckets;
+
+	public LatencyHistogram() {
+		buckets = new LongAdder[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+	}
+
+	/**
+	 * Counts one duration. Negative durations are counted as 0.
+	 */
+	public void record(long nanos) {
+		buckets[bucket(nanos)].increment();
+	}
+
+	private static int bucket(long nanos) {
+		return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, BUCKETS - Long.numberOfLeadingZeros(nanos));
+	}
+
+	/**
+	 * Gets the number of durations recorded.
+	 */
+	public long count() {
+		long count = 0;
+		for (LongAdder b : buckets) count += b.sum();
+		return count;
+	}
+
+	/**
+	 * Estimates the duration which a fraction <code>q</code> of the durations recorded did not exceed.
+	 * @param q a fraction from 0 to 1; 0.5 gives the median.
+	 * @return the upper bound, in nanoseconds, of the bucket holding that duration; 0 if nothing was recorded.
+	 */
+	public long percentile(double q) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(q * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return upperBound(i);
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	private static long upperBound(int bucket) {
+		return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+	}
+
+	public void reset() {
+		for (LongAdder b : buckets) b.reset();
+	}
+
+	public String toString() {
+		return "n=" + count() + " p50<=" + percentile(0.5) + "ns p99<=" + percentile(0.99)
+				+ "ns p999<=" + percentile(0.999) + "ns max<=" + percentile(1) + "ns";
+	}
+}
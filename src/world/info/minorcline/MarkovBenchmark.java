@@ -0,0 +1,303 @@
+package world.info.minorcline;
+
+/**
+ * Benchmarks for the hot paths of training and generation:
+ * addIterator throughput, finalizeGenerator time, generate() latency and throughput across
+ * model orders, Trie get/put and HashPile add/removeExactly.
+ * The generic MarkovGenerator is measured against an EncodedMarkovGenerator of the same items.
+ * Each benchmark is warmed up before it is measured, and reports time per operation together
+ * with the bytes allocated and the garbage collections run per iteration, so that allocation
+ * regressions show up as clearly as slowdowns.
+ *
+ * Run with no arguments to use a synthetic corpus, or pass the names of text files to use as
+ * the corpus instead. The argument "quick" runs fewer iterations on a smaller synthetic corpus.
+ * High orders on a large corpus need a large heap, for example -Xmx4g.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public class MarkovBenchmark {
+	private static final int[] ORDERS = {1, 2, 4, 8, 12, 16, 20};
+	private static final String[] WORDS = {"the", "of", "and", "a", "to", "in", "is", "you", "that", "it",
+			"he", "was", "for", "on", "are", "as", "with", "his", "they", "at", "be", "this", "have", "from",
+			"or", "one", "had", "by", "word", "but", "not", "what", "all", "were", "we", "when", "your", "can"};
+
+	private int warmups;
+	private int iterations;
+	private char[] corpus;
+	/**Keeps results alive so the JIT cannot remove the work being measured.*/
+	private volatile long sink;
+
+	public MarkovBenchmark(char[] corpus, int warmups, int iterations) {
+		this.corpus = corpus;
+		this.warmups = warmups;
+		this.iterations = iterations;
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean quick = false;
+		List<String> files = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.equals("quick"))
+				quick = true;
+			else
+				files.add(arg);
+		}
+		char[] corpus = files.isEmpty() ? syntheticCorpus(quick ? 1 << 18 : 1 << 20, 1) : readCorpus(files);
+		System.out.println("Corpus: " + (files.isEmpty() ? "synthetic" : files) + ", " + corpus.length + " chars");
+		MarkovBenchmark benchmark = quick ? new MarkovBenchmark(corpus, 1, 3) : new MarkovBenchmark(corpus, 5, 10);
+		benchmark.runAll();
+	}
+
+	public void runAll() {
+		printHeader();
+		for (int order : ORDERS) {
+			benchmarkTraining(order);
+		}
+		for (int order : ORDERS) {
+			benchmarkGeneration(order);
+		}
+		benchmarkTrie();
+		benchmarkHashPile();
+	}
+
+	private void benchmarkTraining(int order) {
+		measure("MarkovGenerator.addIterator order " + order, corpus.length, () -> {
+			MarkovGenerator<Character> mg = new MarkovGenerator<>(order);
+			mg.addIterator(characters());
+			sink += mg.size();
+		});
+		measure("EncodedMarkovGenerator.addIterator order " + order, corpus.length, () -> {
+			EncodedMarkovGenerator<Character> mg = new EncodedMarkovGenerator<>(order);
+			mg.addIterator(characters());
+			sink += mg.size();
+		});
+		measure("IntMarkovGenerator.addIterator order " + order, corpus.length, () -> {
+			IntMarkovGenerator mg = new IntMarkovGenerator(order);
+			mg.addIterator(new String(corpus).chars().iterator());
+			sink += mg.size();
+		});
+		//Finalizing cannot be repeated, so each iteration trains a fresh model first and only
+		//the finalization is timed.
+		measureSetup("MarkovGenerator.finalizeGenerator order " + order, 1, () -> {
+			MarkovGenerator<Character> mg = new MarkovGenerator<>(order);
+			mg.addIterator(characters());
+			return mg::finalizeGenerator;
+		});
+		measureSetup("IntMarkovGenerator.finalizeGenerator order " + order, 1, () -> {
+			IntMarkovGenerator mg = new IntMarkovGenerator(order);
+			mg.addIterator(new String(corpus).chars().iterator());
+			return mg::finalizeGenerator;
+		});
+	}
+
+	private void benchmarkGeneration(int order) {
+		benchmarkGenericGeneration(order, 1 << 16);
+		benchmarkEncodedGeneration(order, 1 << 16);
+		benchmarkIntGeneration(order, 1 << 16);
+	}
+
+	private void benchmarkGenericGeneration(int order, int length) {
+		MarkovGenerator<Character> mg = new MarkovGenerator<>(order);
+		mg.addIterator(characters());
+		mg.finalizeGenerator();
+		MarkovSession<Character> session = mg.newSession(new SplittableRandom(order));
+		measure("MarkovGenerator.generate order " + order, length, () -> {
+			long h = 0;
+			for (int i = 0; i < length; i++) h += session.generate();
+			sink += h;
+		});
+	}
+
+	private void benchmarkEncodedGeneration(int order, int length) {
+		EncodedMarkovGenerator<Character> mg = new EncodedMarkovGenerator<>(order);
+		mg.addIterator(characters());
+		mg.finalizeGenerator();
+		EncodedMarkovSession<Character> session = mg.newSession(new SplittableRandom(order));
+		measure("EncodedMarkovGenerator.generate order " + order, length, () -> {
+			long h = 0;
+			for (int i = 0; i < length; i++) h += session.generate();
+			sink += h;
+		});
+	}
+
+	private void benchmarkIntGeneration(int order, int length) {
+		IntMarkovGenerator img = new IntMarkovGenerator(order);
+		img.addIterator(new String(corpus).chars().iterator());
+		img.finalizeGenerator();
+		IntMarkovSession intSession = img.newSession(new SplittableRandom(order));
+		measure("IntMarkovGenerator.generate order " + order, length, () -> {
+			long h = 0;
+			for (int i = 0; i < length; i++) h += intSession.generate();
+			sink += h;
+		});
+		StringBuilder text = new StringBuilder(length);
+		measure("IntMarkovSession.generateText order " + order, length, () -> {
+			text.setLength(0);
+			try {
+				intSession.generateText(length, text);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			sink += text.length();
+		});
+	}
+
+	private void benchmarkTrie() {
+		int order = 8;
+		int count = Math.min(corpus.length - order, 1 << 17);
+		List<List<Character>> keys = new ArrayList<List<Character>>(count);
+		for (int i = 0; i < count; i++) {
+			List<Character> key = new ArrayList<Character>(order);
+			for (int j = 0; j < order; j++) key.add(corpus[i + j]);
+			keys.add(key);
+		}
+		Trie<Character, Integer> trie = new Trie<>();
+		measure("Trie.put order " + order, count, () -> {
+			trie.clear();
+			for (int i = 0; i < count; i++) trie.put(keys.get(i), i);
+			sink += trie.size();
+		});
+		measure("Trie.get order " + order, count, () -> {
+			long h = 0;
+			for (int i = 0; i < count; i++) h += trie.get(keys.get(i));
+			sink += h;
+		});
+	}
+
+	private void benchmarkHashPile() {
+		int count = 1 << 16;
+		List<String> items = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) items.add(WORDS[i % WORDS.length] + i);
+		HashPile<String> pile = new HashPile<>();
+		measure("HashPile.add", count, () -> {
+			pile.clear();
+			for (int i = 0; i < count; i++) pile.add(items.get(i));
+			sink += pile.size();
+		});
+		measure("HashPile.add+removeExactly", count, () -> {
+			pile.clear();
+			for (int i = 0; i < count; i++) pile.add(items.get(i));
+			for (int i = 0; i < count; i++) pile.removeExactly(items.get(i));
+			sink += pile.size();
+		});
+	}
+
+	/**
+	 * Runs <code>body</code> for the warmup iterations, then measures it.
+	 * @param operations the number of operations one run of <code>body</code> performs.
+	 */
+	private void measure(String name, long operations, Runnable body) {
+		measureSetup(name, operations, () -> body);
+	}
+
+	/**
+	 * Like <code>measure()</code>, but each iteration first calls <code>setup</code>, untimed,
+	 * to obtain the work to measure.
+	 */
+	private void measureSetup(String name, long operations, Setup setup) {
+		for (int i = 0; i < warmups; i++) {
+			setup.prepare().run();
+		}
+		com.sun.management.ThreadMXBean threads = threadBean();
+		long thread = Thread.currentThread().getId();
+		double[] nanos = new double[iterations];
+		long bytes = 0;
+		long gcCount = 0;
+		long gcMillis = 0;
+		for (int i = 0; i < iterations; i++) {
+			Runnable body = setup.prepare();
+			long gcCountBefore = gcCount();
+			long gcMillisBefore = gcMillis();
+			long bytesBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			body.run();
+			nanos[i] = System.nanoTime() - start;
+			bytes += threads == null ? 0 : threads.getThreadAllocatedBytes(thread) - bytesBefore;
+			gcCount += gcCount() - gcCountBefore;
+			gcMillis += gcMillis() - gcMillisBefore;
+		}
+		double mean = 0;
+		for (double n : nanos) mean += n;
+		mean /= iterations;
+		double variance = 0;
+		for (double n : nanos) variance += (n - mean) * (n - mean);
+		double deviation = Math.sqrt(variance / iterations);
+		System.out.printf("%-45s %12.1f %10.1f %14.0f %12.1f %8.2f %8.1f%n", name,
+				mean / operations, deviation / operations, operations * 1e9 / mean,
+				(double) bytes / iterations / operations, (double) gcCount / iterations, (double) gcMillis / iterations);
+	}
+
+	private static void printHeader() {
+		System.out.printf("%-45s %12s %10s %14s %12s %8s %8s%n", "benchmark", "ns/op", "+/-", "ops/s",
+				"bytes/op", "gc/iter", "gc ms");
+	}
+
+	private interface Setup {
+		Runnable prepare();
+	}
+
+	private Iterator<Character> characters() {
+		return new Iterator<Character>() {
+			int i = 0;
+
+			public boolean hasNext() {
+				return i < corpus.length;
+			}
+
+			public Character next() {
+				return corpus[i++];
+			}
+		};
+	}
+
+	private static com.sun.management.ThreadMXBean threadBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return (com.sun.management.ThreadMXBean) bean;
+		return null;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) count += gc.getCollectionCount();
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) millis += gc.getCollectionTime();
+		return millis;
+	}
+
+	/**
+	 * Makes a reproducible corpus of random common English words separated by spaces.
+	 */
+	static char[] syntheticCorpus(int length, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		StringBuilder sb = new StringBuilder(length + 16);
+		while (sb.length() < length) {
+			sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+		}
+		sb.setLength(length);
+		return sb.toString().toCharArray();
+	}
+
+	private static char[] readCorpus(List<String> files) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		char[] buffer = new char[1 << 13];
+		for (String file : files) {
+			TextFileIterator text = new TextFileIterator(file);
+			int n;
+			while ((n = text.read(buffer, 0, buffer.length)) > 0) sb.append(buffer, 0, n);
+		}
+		return sb.toString().toCharArray();
+	}
+}
@@ -0,0 +1,205 @@
+package world.info.minorcline;
+
+/**
+ * The Java Flight Recorder events of MarkovGenerator and MarkovSession, one for each phase of a model's life.
+ * They are recorded with the rest of a JFR recording, for instance one started by
+ * <code>-XX:StartFlightRecording</code> or by <code>jcmd JFR.start</code>, and can be enabled and given
+ * thresholds by name like any other event, so training and generation can be watched alongside GC and
+ * allocation in a live process.
+ *
+ * No event is even created until the Flight Recorder has been started, since loading the event classes
+ * starts much of it, which would take a program that never records a good part of a second. After that,
+ * events are only committed while a recording enables them, and otherwise cost little more than a check
+ * of <code>shouldCommit()</code>. None of them records a stack trace, and none is emitted per item:
+ * a session reports calls that generate in bulk, and the latency of single items is left to MarkovMetrics.
+ * Each event is begun by a factory method here, which returns null while the recorder is not running,
+ * and ended by the matching <code>commit()</code> method, which ignores null.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+final class MarkovEvents {
+	private MarkovEvents() {
+	}
+
+	/**
+	 * Tells whether the Flight Recorder has been started, by a command line option or since.
+	 */
+	private static boolean recorderRunning() {
+		return FlightRecorder.isInitialized();
+	}
+
+	static Training training() {
+		if (!recorderRunning())
+			return null;
+		Training event = new Training();
+		event.begin();
+		return event;
+	}
+
+	static void commit(Training event, long items, int contexts, boolean concurrent) {
+		if (event == null)
+			return;
+		event.end();
+		if (event.shouldCommit()) {
+			event.items = items;
+			event.contexts = contexts;
+			event.concurrent = concurrent;
+			event.commit();
+		}
+	}
+
+	static Finalize finalizing() {
+		if (!recorderRunning())
+			return null;
+		Finalize event = new Finalize();
+		event.begin();
+		return event;
+	}
+
+	static void commit(Finalize event, int contexts) {
+		if (event == null)
+			return;
+		event.end();
+		if (event.shouldCommit()) {
+			event.contexts = contexts;
+			event.commit();
+		}
+	}
+
+	static Compaction compaction() {
+		if (!recorderRunning())
+			return null;
+		Compaction event = new Compaction();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends a Compaction event, and tells whether it is to be committed, once its fields are found.
+	 */
+	static boolean shouldCommit(Compaction event) {
+		if (event == null)
+			return false;
+		event.end();
+		return event.shouldCommit();
+	}
+
+	static void commit(Compaction event, int contexts, int nodes, long suffixes, int maxSuffixes) {
+		event.contexts = contexts;
+		event.nodes = nodes;
+		event.suffixes = suffixes;
+		event.maxSuffixes = maxSuffixes;
+		event.commit();
+	}
+
+	static Publish publish() {
+		if (!recorderRunning())
+			return null;
+		Publish event = new Publish();
+		event.begin();
+		return event;
+	}
+
+	static void commit(Publish event, int updatedContexts, boolean compacted) {
+		if (event == null)
+			return;
+		event.end();
+		if (event.shouldCommit()) {
+			event.updatedContexts = updatedContexts;
+			event.compacted = compacted;
+			event.commit();
+		}
+	}
+
+	static Generation generation() {
+		if (!recorderRunning())
+			return null;
+		Generation event = new Generation();
+		event.begin();
+		return event;
+	}
+
+	static void commit(Generation event, int items) {
+		if (event == null)
+			return;
+		event.end();
+		if (event.shouldCommit()) {
+			event.items = items;
+			event.commit();
+		}
+	}
+
+	@Name("world.info.minorcline.Training")
+	@Label("Markov Training")
+	@Category("Markov Generator")
+	@Description("One input counted by MarkovGenerator.addIterator()")
+	@StackTrace(false)
+	static final class Training extends Event {
+		@Label("Items")
+		long items;
+		@Label("Contexts")
+		@Description("Distinct subsequences in the model afterwards")
+		int contexts;
+		@Label("Concurrent")
+		@Description("Whether the input was counted while other inputs could be")
+		boolean concurrent;
+	}
+
+	@Name("world.info.minorcline.Finalize")
+	@Label("Markov Finalize")
+	@Category("Markov Generator")
+	@Description("MarkovGenerator.finalizeGenerator()")
+	@StackTrace(false)
+	static final class Finalize extends Event {
+		@Label("Contexts")
+		int contexts;
+	}
+
+	@Name("world.info.minorcline.Compaction")
+	@Label("Markov Compaction")
+	@Category("Markov Generator")
+	@Description("The model packed into a CompactTrie, on finalizing or once enough input was added afterwards")
+	@StackTrace(false)
+	static final class Compaction extends Event {
+		@Label("Contexts")
+		int contexts;
+		@Label("Nodes")
+		int nodes;
+		@Label("Suffixes")
+		@Description("Distinct suffixes over all subsequences")
+		long suffixes;
+		@Label("Max Suffixes")
+		@Description("The most distinct suffixes of any one subsequence")
+		int maxSuffixes;
+	}
+
+	@Name("world.info.minorcline.Publish")
+	@Label("Markov Publish")
+	@Category("Markov Generator")
+	@Description("A Snapshot published for input added to a finalized MarkovGenerator")
+	@StackTrace(false)
+	static final class Publish extends Event {
+		@Label("Updated Contexts")
+		@Description("Subsequences whose samplers were rebuilt or added")
+		int updatedContexts;
+		@Label("Compacted")
+		boolean compacted;
+	}
+
+	@Name("world.info.minorcline.Generation")
+	@Label("Markov Generation")
+	@Category("Markov Generator")
+	@Description("Items generated in bulk by one call of a MarkovSession")
+	@StackTrace(false)
+	static final class Generation extends Event {
+		@Label("Items")
+		int items;
+	}
+}
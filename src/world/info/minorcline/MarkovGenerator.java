@@ -8,20 +8,90 @@ package world.info.minorcline;
  * August 2014
  * 
  * November 2018: Refactored with minor optimizations, and to use Trie data structure instead of HashMap.
+ * 
+ * October 2026: Training finds each subsequence through a rolling-hash NGramIndex instead of walking the Trie.
+ * Once finalized, the model is only read, so MarkovSessions can generate from it on many threads at once.
+ * Finalizing packs the Trie into a CompactTrie.
+ * A finalized model can still be trained. Sessions read an immutable Snapshot of the model, and each call
+ * to addIterator() publishes a new one in which only the samplers of the touched subsequences are rebuilt.
+ * A generator may be given a budget of subsequences. It then admits a subsequence only once a CountMinSketch
+ * has seen it often enough, and prunes rare subsequences and suffixes whenever the budget is reached.
+ * A back-off generator keeps counts for every length of subsequence up to its order, stored newest item first
+ * in the same Trie, and generates from the longest known suffix of its output, in one walk down the Trie.
+ * Each suffix of a frozen subsequence is linked to the frozen subsequence it leads to, so sessions follow
+ * one link per item instead of walking the CompactTrie for every item they generate.
+ * Until a plain model is finalized, any number of threads may train it at once: the index is striped by
+ * hash, and each thread only holds the lock of the stripe of the subsequence it is counting.
+ * Each phase of training and generation is reported as a JFR event, see MarkovEvents, and to the MarkovMetrics
+ * set on the generator, if any.
+ * Finalizing, and each later compaction, readies the MarkovMaps and builds the samplers and successor links
+ * of ranges of frozen nodes in parallel on a ForkJoinPool. Each node is handled by exactly one task, so the
+ * model is the same however the work is split.
  */
 
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.random.RandomGenerator;
 
 public class MarkovGenerator<T> {
+    /**The most cells in each row of the admission sketch of a generator with a budget.*/
+    public static final int MAX_SKETCH_WIDTH = 1 << 20;
+    /**Number of new subsequences a training thread collects before putting them into the Trie.*/
+    private static final int NEW_KEY_BATCH = 1 << 10;
+    /**Most frozen nodes whose samplers one task builds; models of at most this many nodes are compacted on one thread.*/
+    private static final int COMPACT_CHUNK = 1 << 12;
     
     private int order;
+    /**All subsequences before finalizing; afterwards only those first seen since the last compaction.*/
     private Trie<T,MarkovMap<T>> subsequences;
+    /**The read-only form of subsequences, which replaces it once finalized.*/
+    private CompactTrie<T,MarkovMap<T>> frozen;
+    /**Finds the MarkovMaps of subsequences in one lookup while training. After finalizing, holds only
+     * those in subsequences; the ones in frozen are found by walking it.*/
+    private StripedNGramIndex<T,MarkovMap<T>> index;
+    /**Set for a back-off model, which trains with one index per subsequence length instead of index.*/
+    private boolean backOff;
+    /**backOffIndexes[d - 1] holds the subsequences of length d, newest item first.*/
+    private NGramIndex<T,MarkovMap<T>>[] backOffIndexes;
+    /**The suffix link of every node of frozen, from which the successors of its samplers are found.*/
+    private int[] suffixLinks;
+    /**Nodes of frozen whose MarkovMaps have been added to since the last Snapshot was published.*/
+    private int[] staleNodes;
+    private int staleCount;
+    /**
+     * The first subsequence of the input counted last, from which sessions start and restart. Of inputs
+     * counted concurrently, it is that of whichever set it last, which depends on thread timing.
+     */
     private List<T> firstInputSubseq;
-    private boolean finalized;
-    private LinkedList<T> outputSubseq;
+    /**Volatile so that a model finalized on one thread is fully visible to sessions on others.*/
+    private volatile boolean finalized;
+    /**The model read by sessions, replaced as a whole whenever training changes it.*/
+    private volatile Snapshot<T> snapshot;
+    /**The session used by generate() and generateList().*/
+    private MarkovSession<T> defaultSession;
+    /**The most subsequences to keep while training, or 0 for no limit.*/
+    private int maxContexts;
+    /**The number of sightings after which a new subsequence is admitted; raised by pruning.*/
+    private int admitCount;
+    /**Subsequences and suffixes seen fewer times than this are removed by the next pruning.*/
+    private int pruneCount;
+    /**Counts the sightings of subsequences that have not been admitted. Null when there is no budget.*/
+    private CountMinSketch sketch;
+    /**Set once anything has been pruned, after which sessions restart from random subsequences.*/
+    private boolean pruned;
+    /**Shared by threads training a plain unfinalized model at once; held exclusively by everything else
+     * that reads or changes the model while training.*/
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**Where training, finalizing and the sessions of this generator report their measurements.*/
+    private volatile MarkovMetrics metrics = MarkovMetrics.NONE;
+    /**Where compactions build samplers; set by finalizeGenerator().*/
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
     
     /**
      * Creates a new Markov chain from the data found by the given file reader.
@@ -32,12 +102,71 @@ public class MarkovGenerator<T> {
 		finalized = false;
 		this.order = order;
 		subsequences = new Trie<T, MarkovMap<T>>();
+		index = new StripedNGramIndex<T, MarkovMap<T>>(order);
     }
     
+    /**
+     * Creates a new Markov chain which, if <code>backOff</code> is set, counts what follows every
+     * subsequence of length 1 to <code>order</code>. Generation then continues from the longest suffix
+     * of its output that was seen in the input, instead of restarting whenever the last
+     * <code>order</code> items were not, so a lower order gives output as good as a higher one would.
+     * @param order the longest subsequences to count.
+     * @param backOff whether to count shorter subsequences and back off to them.
+     */
+    public MarkovGenerator(int order, boolean backOff) {
+    	this(order);
+    	if (backOff) {
+    		this.backOff = true;
+    		index = null;
+    		backOffIndexes = newBackOffIndexes();
+    	}
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private NGramIndex<T,MarkovMap<T>>[] newBackOffIndexes() {
+    	NGramIndex<T,MarkovMap<T>>[] indexes = new NGramIndex[order];
+    	for (int d = 1; d <= order; d++)
+    		indexes[d - 1] = new NGramIndex<T, MarkovMap<T>>(d);
+    	return indexes;
+    }
     
     /**
-     * Reads all the input from another iterator and adds that information to the Markov chain,
-     *  unless the generator has already been finalized.
+     * Creates a new Markov chain which keeps at most about <code>maxContexts</code> subsequences while training.
+     * A subsequence is only added to the model from its <code>minCount</code>th sighting on, as estimated
+     * by a CountMinSketch, so most subsequences seen only once never take up memory; the first subsequence
+     * of each input is always added. Whenever the budget is reached, the subsequences and suffixes seen
+     * fewer than twice are removed, and if that does not free a quarter of the budget, those seen fewer
+     * than three times, and so on. Later subsequences must then be seen as often to be admitted, and the
+     * sightings counted so far are halved, so that admission favours what the input has lately repeated.
+     * Generation restarts, as at the end of the input, wherever it reaches a subsequence that was pruned.
+     * The budget is enforced until the generator is finalized; later input is only subject to admission.
+     * The sketch has two cells per subsequence of the budget in each of its rows, up to
+     * <code>MAX_SKETCH_WIDTH</code>, so it takes at most 16 MB whatever the budget. Past a budget of
+     * half that width, rare subsequences are more often over-estimated, and admitted a little early.
+     * @param order the order of the Markov model; length of observed subsequences
+     * @param maxContexts the most subsequences to keep.
+     * @param minCount the number of sightings after which a subsequence is admitted; 1 admits all of them.
+     */
+    public MarkovGenerator(int order, int maxContexts, int minCount) {
+    	this(order);
+    	if (maxContexts < 1 || minCount < 1)
+    		throw new IllegalArgumentException("maxContexts and minCount must be positive.");
+    	this.maxContexts = maxContexts;
+    	admitCount = minCount;
+    	pruneCount = 2;
+    	sketch = new CountMinSketch((int) Math.min(maxContexts * 2L, MAX_SKETCH_WIDTH));
+    }
+    
+    
+    /**
+     * Reads all the input from another iterator and adds that information to the Markov chain.
+     * If the generator has already been finalized, the samplers of the subsequences the input touched
+     * are rebuilt and a new Snapshot is published when the input ends; sessions keep generating from
+     * the previous Snapshot meanwhile.
+     * Until then, a generator without a budget or back-off may be given inputs on several threads at once,
+     * which are counted into the one model concurrently. The model is the same whatever their timing, but
+     * sessions start, and restart at dead ends, from the first subsequence of the input counted last, and
+     * which of several concurrent inputs that is depends on the timing: it is arbitrary among them.
      * @param dataIterator iterates through the next input sequence.
      * @return true if the information from the iterator was added to the model, or false if the model 
      * was not changed as a result of the call.
@@ -45,69 +174,519 @@ public class MarkovGenerator<T> {
 	 * furnish the generator.
      */
     public boolean addIterator(Iterator<T> dataIterator) throws IllegalStateException{
-		if(finalized)
-			return false;
+		MarkovEvents.Training event = MarkovEvents.training();
+		long start = System.nanoTime();
 		Iterator<T> dataReader = dataIterator;
-		getFirst(dataReader);
-		buildMarkovs(dataReader);
-		return true;
+		List<T> first = getFirst(dataReader);
+		if (addConcurrently(first, dataReader, event, start))
+			return true;
+		lock.writeLock().lock();
+		try {
+			long items;
+			if (!finalized)
+				firstInputSubseq = first;
+			else if (subsequences == null) {
+				subsequences = new Trie<T, MarkovMap<T>>();
+				if (backOff)
+					backOffIndexes = newBackOffIndexes();
+				else
+					index = new StripedNGramIndex<T, MarkovMap<T>>(order);
+			}
+			if (backOff)
+				items = buildBackOffMarkovs(first, dataReader);
+			else
+				items = buildMarkovs(first, dataReader);
+			if (finalized)
+				publish();
+			trained(event, start, items, contextCount(), false);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+    }
+    
+    /**
+     * Reports an input that has been counted to the metrics, and to JFR if <code>event</code> is not null.
+     */
+    private void trained(MarkovEvents.Training event, long start, long items, int contexts, boolean concurrent) {
+    	metrics.trained(items, contexts, System.nanoTime() - start);
+    	MarkovEvents.commit(event, items, contexts, concurrent);
+    }
+    
+    /**
+     * Counts an input while holding the lock only in shared mode, if this is a plain model that has not
+     * been finalized; other threads may be doing the same.
+     * @return false if the input has to be counted while holding the lock exclusively instead.
+     */
+    private boolean addConcurrently(List<T> first, Iterator<T> dataReader, MarkovEvents.Training event, long start) {
+    	if (finalized || backOff || sketch != null)
+    		return false;
+    	lock.readLock().lock();
+    	try {
+    		if (finalized)
+    			return false;
+    		//any of the concurrent inputs may be the last to set it; see addIterator()
+    		synchronized (subsequences) {
+    			firstInputSubseq = first;
+    		}
+    		long items = buildMarkovsConcurrently(first, dataReader);
+    		int contexts;
+    		synchronized (subsequences) {
+    			contexts = subsequences.size();
+    		}
+    		trained(event, start, items, contexts, true);
+    		return true;
+    	} finally {
+    		lock.readLock().unlock();
+    	}
     }
 	
 	 /**
      * Obtains the first subsequence of length <code>order</code> from the iterator.
      */
-    private void getFirst(Iterator<T> dataReader) {
-    	firstInputSubseq = new ArrayList<>();
+    private List<T> getFirst(Iterator<T> dataReader) {
+    	List<T> first = new ArrayList<>();
 		int i = 0;
 		while (dataReader.hasNext() && i < order){
-			firstInputSubseq.add(dataReader.next());
+			first.add(dataReader.next());
 			i++;
 		}
-		if(firstInputSubseq.size() < order)
-			throw new IllegalStateException("Not enough data provided. Obtained only " + firstInputSubseq.size() + 
+		if(first.size() < order)
+			throw new IllegalStateException("Not enough data provided. Obtained only " + first.size() + 
 					"items.");
+		return first;
     }
     
     /**
      * Reads through the entire file and builds Markov objects for each subsequence found in the file.
      * Does not build a Markov object for the last subsequence found in the input because there is no 
      * data to follow it.
+     * @return the number of items in the input.
      */
-    private void buildMarkovs(Iterator<T> dataReader) {
-    	
-		subsequences.put(firstInputSubseq, new MarkovMap<T>());
-		LinkedList<T> subSeq = new LinkedList<T>();
-		for (T t: firstInputSubseq) subSeq.add(t);
+    private long buildMarkovs(List<T> first, Iterator<T> dataReader) {
+    	ContextWindow<T> subSeq = new ContextWindow<T>(first);
+    	long hash = index.hash(subSeq.ring(), subSeq.head());
+    	MarkovMap<T> m = dataReader.hasNext() ? mapFor(hash, subSeq, true) : null;
+    	long items = first.size();
 		
 		while (dataReader.hasNext()){
 			T nextItem = dataReader.next();
-			MarkovMap<T> m = subsequences.get(subSeq);
-			if (m == null) {
-				m = new MarkovMap<T>();
-				subsequences.put(subSeq, m);
+			items++;
+			//null when the subsequence has not been admitted to a budgeted model
+			if (m != null)
+				m.add(nextItem);
+			//shift left
+			hash = index.roll(hash, subSeq.get(0), nextItem);
+			subSeq.add(nextItem);
+			if (dataReader.hasNext())
+				m = mapFor(hash, subSeq, false);
+		}
+		return items;
+	}
+    
+    /**
+     * Like buildMarkovs(), but safe to run on several threads at once: each item is counted while holding
+     * the lock of the stripe of the subsequence before it. New subsequences are put into the Trie, which
+     * is not read while training, in batches under its own lock.
+     * @return the number of items in the input.
+     */
+    private long buildMarkovsConcurrently(List<T> first, Iterator<T> dataReader) {
+    	ContextWindow<T> subSeq = new ContextWindow<T>(first);
+    	long hash = index.hash(subSeq.ring(), subSeq.head());
+    	List<List<T>> newKeys = new ArrayList<List<T>>();
+    	List<MarkovMap<T>> newMaps = new ArrayList<MarkovMap<T>>();
+    	long items = first.size();
+		while (dataReader.hasNext()){
+			T nextItem = dataReader.next();
+			items++;
+			NGramIndex<T,MarkovMap<T>> stripe = index.stripe(hash);
+			synchronized (stripe) {
+				MarkovMap<T> m = stripe.get(hash, subSeq.ring(), subSeq.head());
+				if (m == null) {
+					m = new MarkovMap<T>();
+					stripe.put(hash, subSeq.ring(), subSeq.head(), m);
+					newKeys.add(subSeq.toList());
+					newMaps.add(m);
+				}
+				m.add(nextItem);
 			}
-			m.add(nextItem);
+			if (newKeys.size() == NEW_KEY_BATCH)
+				putAll(newKeys, newMaps);
 			//shift left
-			subSeq.remove();
+			hash = index.roll(hash, subSeq.get(0), nextItem);
 			subSeq.add(nextItem);
 		}
+		putAll(newKeys, newMaps);
+		return items;
 	}
     
+    private void putAll(List<List<T>> keys, List<MarkovMap<T>> maps) {
+    	synchronized (subsequences) {
+    		for (int i = 0; i < keys.size(); i++) subsequences.put(keys.get(i), maps.get(i));
+    	}
+    	keys.clear();
+    	maps.clear();
+    }
+    
+    /**
+     * Gets the MarkovMap of the subsequence held in the window <code>subSeq</code>,
+     * adding a new one to the index and the Trie if the subsequence has not been seen before.
+     * Once finalized, a MarkovMap found in frozen is noted as stale, since a suffix is about to be added to it.
+     * With a budget, a new subsequence is only added once it has been seen often enough, or if
+     * <code>force</code> is set.
+     * @return the MarkovMap, or null if the subsequence was not admitted.
+     */
+    private MarkovMap<T> mapFor(long hash, ContextWindow<T> subSeq, boolean force) {
+    	NGramIndex<T,MarkovMap<T>> stripe = index.stripe(hash);
+    	MarkovMap<T> m = stripe.get(hash, subSeq.ring(), subSeq.head());
+    	if (m != null)
+    		return m;
+    	if (finalized) {
+    		int node = frozen.node(subSeq);
+    		if (node >= 0)
+    			return frozenMap(node);
+    	}
+    	if (sketch != null) {
+    		if (sketch.add(hash) < admitCount && !force)
+    			return null;
+    		if (!finalized && index.size() >= maxContexts)
+    			prune();
+    	}
+    	m = new MarkovMap<T>();
+    	stripe.put(hash, subSeq.ring(), subSeq.head(), m);
+    	subsequences.put(subSeq.toList(), m);
+    	return m;
+    }
+    
+    /**
+     * Gets the MarkovMap of a node of frozen, noting it as stale since a suffix is about to be added to it.
+     */
+    private MarkovMap<T> frozenMap(int node) {
+    	MarkovMap<T> m = frozen.valueAt(node);
+    	if (m.isReady()) {
+    		if (staleCount == staleNodes.length)
+    			staleNodes = Arrays.copyOf(staleNodes, staleCount * 2);
+    		staleNodes[staleCount++] = node;
+    	}
+    	return m;
+    }
+    
     /**
-     * Prepares for generation. Must be called before <code>nextRandom()</code> can be used.
+     * Like buildMarkovs(), but for a back-off model: each item is added to the MarkovMaps of all the
+     * subsequences of length 1 to <code>order</code> which end just before it, from the second item of
+     * the input on.
+     * @return the number of items in the input.
+     */
+    private long buildBackOffMarkovs(List<T> first, Iterator<T> dataReader) {
+    	//the most recent items, newest first
+    	Object[] recent = new Object[order];
+    	int known = 0;
+    	long items = 0;
+    	Iterator<T> firstItems = first.iterator();
+    	while (firstItems.hasNext() || dataReader.hasNext()) {
+    		T nextItem = firstItems.hasNext() ? firstItems.next() : dataReader.next();
+    		items++;
+    		//the hash of each length extends that of the length before, so all are found in one pass
+    		long hash = 0;
+    		for (int length = 1; length <= known; length++) {
+    			hash = backOffIndexes[length - 1].extend(hash, recent[length - 1]);
+    			backOffMapFor(length, hash, recent).add(nextItem);
+    		}
+    		System.arraycopy(recent, 0, recent, 1, order - 1);
+    		recent[0] = nextItem;
+    		if (known < order)
+    			known++;
+    	}
+    	return items;
+    }
+    
+    /**
+     * Gets the MarkovMap of the subsequence made of the first <code>length</code> items of
+     * <code>recent</code>, newest first, adding a new one if it has not been seen before.
+     * @param hash the hash of the subsequence, as its index of that length would compute it.
+     */
+    @SuppressWarnings("unchecked")
+    private MarkovMap<T> backOffMapFor(int length, long hash, Object[] recent) {
+    	NGramIndex<T,MarkovMap<T>> lengthIndex = backOffIndexes[length - 1];
+    	MarkovMap<T> m = lengthIndex.get(hash, recent, 0);
+    	if (m != null)
+    		return m;
+    	if (finalized) {
+    		int node = 0;
+    		for (int i = 0; i < length && node >= 0; i++)
+    			node = frozen.child(node, (T) recent[i]);
+    		if (node >= 0 && frozen.valueAt(node) != null)
+    			return frozenMap(node);
+    	}
+    	m = new MarkovMap<T>();
+    	lengthIndex.put(hash, recent, 0, m);
+    	subsequences.put(keyToList(Arrays.copyOf(recent, length)), m);
+    	return m;
+    }
+    
+    /**
+     * Removes rare subsequences, and rare suffixes of the rest, until at most three quarters of the
+     * budget is used. The first subsequence of the current input is kept, so generation can always restart.
+     * The Trie is rebuilt from the subsequences left in the index.
+     */
+    private void prune() {
+    	int target = Math.max(1, maxContexts * 3 / 4);
+    	//the frequencies of all but the first subsequence, from which the lowest threshold that leaves
+    	//at most target subsequences is read off directly
+    	int[] frequencies = new int[index.size()];
+    	int[] count = {0};
+    	index.forEach((key, m) -> {
+    		if (!Arrays.asList(key).equals(firstInputSubseq))
+    			frequencies[count[0]++] = m.frequency();
+    	});
+    	int n = count[0];
+    	int allowed = target - (index.size() - n);
+    	if (n > allowed) {
+    		Arrays.sort(frequencies, 0, n);
+    		pruneCount = Math.max(pruneCount, frequencies[n - allowed - 1] + 1);
+    	}
+    	int threshold = pruneCount;
+    	index.removeIf((key, m) -> m.frequency() < threshold && !Arrays.asList(key).equals(firstInputSubseq));
+    	index.forEach((key, m) -> m.prune(threshold));
+    	admitCount = Math.max(admitCount, pruneCount);
+    	//older sightings count for half, so the admission counts follow the recent input
+    	sketch.halve();
+    	pruned = true;
+    	Trie<T,MarkovMap<T>> kept = new Trie<T, MarkovMap<T>>();
+    	index.forEach((key, m) -> kept.put(keyToList(key), m));
+    	subsequences = kept;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<T> keyToList(Object[] key) {
+    	return Arrays.asList((T[]) key);
+    }
+    
+    
+    /**
+     * Prepares for generation. Must be called before <code>generate()</code> or <code>newSession()</code> can be used.
+     * Large models are prepared in parallel on the common ForkJoinPool.
      * @throws IllegalStateException if not enough information has been offered through 
      * <code>addIterator()</code>.
      */
     public void finalizeGenerator() throws IllegalStateException{
-    	if (subsequences.isEmpty()) {
-    		throw new IllegalStateException("Not enough information provided through addIterator() to finalize MarkovGenerator.");
+    	finalizeGenerator(ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Prepares for generation, building the samplers of large models in parallel on <code>pool</code>,
+     * which later compactions use too. The model is the same whatever the pool's parallelism.
+     * @throws IllegalStateException if not enough information has been offered through 
+     * <code>addIterator()</code>.
+     */
+    public void finalizeGenerator(ForkJoinPool pool) throws IllegalStateException{
+    	lock.writeLock().lock();
+    	try {
+    		if (finalized)
+    			return;
+    		//timed from when the lock is held, so that waiting for inputs in progress is not counted
+    		MarkovEvents.Finalize event = MarkovEvents.finalizing();
+    		long start = System.nanoTime();
+    		if (subsequences.isEmpty()) {
+    			throw new IllegalStateException("Not enough information provided through addIterator() to finalize MarkovGenerator.");
+    		}
+    		this.pool = pool;
+    		compact();
+    		finalized = true;
+    		defaultSession = newSession();
+    		metrics.finalized(frozen.size(), System.nanoTime() - start);
+    		MarkovEvents.commit(event, frozen.size());
+    	} finally {
+    		lock.writeLock().unlock();
     	}
-		Iterator<MarkovMap<T>> maps = subsequences.valuesIterator();
-		while(maps.hasNext()){
-			maps.next().getReady();
-		}
-		finalized = true;
-		outputSubseq = new LinkedList<T>(firstInputSubseq);
+    }
+    
+    /**
+     * Packs every subsequence into frozen, readies the MarkovMaps that are not ready, and publishes
+     * a Snapshot of it with all its samplers.
+     */
+    private void compact() {
+    	MarkovEvents.Compaction event = MarkovEvents.compaction();
+    	if (frozen != null)
+    		frozen.putAllInto(subsequences);
+    	frozen = subsequences.freeze();
+    	subsequences = null;
+    	index = null;
+    	backOffIndexes = null;
+    	staleNodes = new int[16];
+    	staleCount = 0;
+    	suffixLinks = backOff ? null : frozen.suffixLinks();
+    	PagedArray samplers = new PagedArray(frozen.nodeCount());
+    	PagedArray successors = backOff ? null : new PagedArray(samplers.length());
+    	SamplerTask task = new SamplerTask(samplers, successors, 0, samplers.length());
+    	if (samplers.length() <= COMPACT_CHUNK)
+    		task.compute();
+    	else
+    		pool.invoke(task);
+    	snapshot = new Snapshot<T>(frozen, samplers, successors, null, null, pruned, backOff);
+    	compacted(event, samplers);
+    }
+    
+    /**
+     * Reports the shape of a newly compacted model, found from its samplers, to the metrics and to JFR.
+     * The samplers are only walked when something is listening.
+     */
+    @SuppressWarnings("unchecked")
+    private void compacted(MarkovEvents.Compaction event, PagedArray samplers) {
+    	boolean commit = MarkovEvents.shouldCommit(event);
+    	if (!commit && metrics == MarkovMetrics.NONE)
+    		return;
+    	long suffixes = 0;
+    	int maxSuffixes = 0;
+    	for (int node = 0; node < samplers.length(); node++) {
+    		Object sampler = samplers.get(node);
+    		if (sampler != null) {
+    			int n = ((MarkovMap.Sampler<T>) sampler).size();
+    			suffixes += n;
+    			maxSuffixes = Math.max(maxSuffixes, n);
+    		}
+    	}
+    	metrics.compacted(frozen.size(), suffixes, maxSuffixes);
+    	if (commit)
+    		MarkovEvents.commit(event, frozen.size(), frozen.nodeCount(), suffixes, maxSuffixes);
+    }
+    
+    /**
+     * Rebuilds the samplers of the subsequences touched since the last Snapshot, and publishes a new one.
+     * The samplers and successors of frozen are shared with the last Snapshot, and only the pages holding
+     * stale ones are copied, so publishing costs in proportion to the touched subsequences, not the model.
+     * New subsequences are frozen separately until they make up a quarter of the model, when everything
+     * is compacted again.
+     */
+    private void publish() {
+    	MarkovEvents.Publish event = MarkovEvents.publish();
+    	long start = System.nanoTime();
+    	int updated = staleCount + subsequences.size();
+    	if (subsequences.size() * 4 > frozen.size()) {
+    		compact();
+    		published(event, start, updated, true);
+    		return;
+    	}
+    	Iterator<MarkovMap<T>> added = subsequences.isEmpty() ? null : subsequences.valuesIterator();
+    	while (added != null && added.hasNext()) {
+    		MarkovMap<T> m = added.next();
+    		if (!m.isReady())
+    			m.getReady();
+    	}
+    	PagedArray samplers = snapshot.samplers.copyOnWrite();
+    	PagedArray successors = backOff ? null : snapshot.successors.copyOnWrite();
+    	for (int i = 0; i < staleCount; i++) {
+    		int node = staleNodes[i];
+    		MarkovMap<T> m = frozen.valueAt(node);
+    		m.getReady();
+    		samplers.set(node, m.sampler());
+    		if (!backOff)
+    			successors.set(node, successors(node, m.sampler()));
+    	}
+    	staleCount = 0;
+    	if (subsequences.isEmpty())
+    		snapshot = new Snapshot<T>(frozen, samplers, successors, null, null, pruned, backOff);
+    	else {
+    		CompactTrie<T,MarkovMap<T>> newer = subsequences.freeze();
+    		snapshot = new Snapshot<T>(frozen, samplers, successors, newer, samplers(newer), pruned, backOff);
+    	}
+    	published(event, start, updated, false);
+    }
+    
+    /**
+     * Reports a published Snapshot to the metrics, and to JFR.
+     */
+    private void published(MarkovEvents.Publish event, long start, int updatedContexts, boolean compacted) {
+    	metrics.published(updatedContexts, System.nanoTime() - start);
+    	MarkovEvents.commit(event, updatedContexts, compacted);
+    }
+    
+    /**
+     * Gets the Sampler of every node of <code>trie</code> which has a MarkovMap, indexed by node.
+     */
+    private static <T> PagedArray samplers(CompactTrie<T,MarkovMap<T>> trie) {
+    	PagedArray samplers = new PagedArray(trie.nodeCount());
+    	for (int i = 0; i < samplers.length(); i++) {
+    		MarkovMap<T> m = trie.valueAt(i);
+    		if (m != null)
+    			samplers.set(i, m.sampler());
+    	}
+    	return samplers;
+    }
+    
+    /**
+     * Links each suffix of the sampler of a frozen node to the frozen node its subsequence leads to:
+     * the child, along the suffix, of the node's suffix link.
+     * @return the node each suffix leads to, or -1 where that subsequence is not in frozen;
+     * null if the node has no sampler.
+     */
+    @SuppressWarnings("unchecked")
+    private int[] successors(int node, Object sampler) {
+    	if (sampler == null)
+    		return null;
+    	MarkovMap.Sampler<T> s = (MarkovMap.Sampler<T>) sampler;
+    	int[] next = new int[s.size()];
+    	int link = suffixLinks[node];
+    	for (int i = 0; i < next.length; i++) next[i] = link < 0 ? -1 : frozen.child(link, s.suffix(i));
+    	return next;
+    }
+    
+    /**
+     * Readies the MarkovMaps of the frozen nodes in [lo, hi), and fills in their samplers and successors,
+     * splitting the range in half until it holds at most COMPACT_CHUNK nodes.
+     */
+    private class SamplerTask extends RecursiveAction {
+    	private static final long serialVersionUID = 1L;
+    	private PagedArray samplers;
+    	/**Null for a back-off model.*/
+    	private PagedArray successors;
+    	private int lo;
+    	private int hi;
+    	
+    	SamplerTask(PagedArray samplers, PagedArray successors, int lo, int hi) {
+    		this.samplers = samplers;
+    		this.successors = successors;
+    		this.lo = lo;
+    		this.hi = hi;
+    	}
+    	
+    	protected void compute() {
+    		if (hi - lo > COMPACT_CHUNK) {
+    			int mid = (lo + hi) >>> 1;
+    			invokeAll(new SamplerTask(samplers, successors, lo, mid), new SamplerTask(samplers, successors, mid, hi));
+    			return;
+    		}
+    		for (int node = lo; node < hi; node++) {
+    			MarkovMap<T> m = frozen.valueAt(node);
+    			if (m == null)
+    				continue;
+    			if (!m.isReady())
+    				m.getReady();
+    			samplers.set(node, m.sampler());
+    			if (successors != null)
+    				successors.set(node, successors(node, m.sampler()));
+    		}
+    	}
+    }
+    
+    /**
+     * Starts a new, independent stream of output from the finalized model, with its own
+     * random number generator. Sessions may be used on different threads at the same time.
+     * @throws IllegalStateException if MarkovGenerator has not been finalized.
+     */
+    public MarkovSession<T> newSession() throws IllegalStateException{
+    	return newSession(new SplittableRandom());
+    }
+    
+    /**
+     * Starts a new, independent stream of output from the finalized model, drawing random
+     * numbers from <code>random</code>. A seeded generator gives a reproducible stream.
+     * @throws IllegalStateException if MarkovGenerator has not been finalized.
+     */
+    public MarkovSession<T> newSession(RandomGenerator random) throws IllegalStateException{
+    	if (!finalized)
+    		throw new IllegalStateException("MarkovGenerator has not yet been finalized.");
+    	return new MarkovSession<T>(this, firstInputSubseq, random);
     }
     
     /**
@@ -115,28 +694,195 @@ public class MarkovGenerator<T> {
      * @return the number of distinct subsequences of length <code>order</code> in the entire input.
      */
     public int size(){
-		return subsequences.size();
+    	lock.writeLock().lock();
+    	try {
+    		return contextCount();
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
     }
     
     /**
-     * Gets the next random item based on the Markov chain for given sequence.
-     * @param seq the substring of length k which is referred to in the Markov chain.
-     * @return a random item based on the Markov chain, or null if the last subsequence in 
-     * the source is inputted, since it is excluded from the model.
-	 * @throws IllegalStateException if <code>finalize()</code> has not been called.
+     * Counts the distinct subsequences, while holding the lock exclusively.
      */
-    private T nextRandom(Iterable<T> seq) throws IllegalStateException{
-		if(!finalized)
-			throw new IllegalStateException("MarkovGenerator has not been finalized.");
-		MarkovMap<T> m;
-		T t;
-		try{
-			m = subsequences.get(seq);
-			t = m.random();
-		}catch(NullPointerException e){
-			return null;
-		}	    
-		return t;
+    private int contextCount() {
+    	if (!finalized)
+    		return subsequences.size();
+    	return frozen.size() + (subsequences == null ? 0 : subsequences.size());
+    }
+    
+    /**
+     * Measures the finalized model: its contexts, the nodes and edges of its CompactTries, its suffix
+     * entries, and the estimated bytes of each structure, as described in ModelFootprint. Subsequences
+     * added since the model was last compacted are counted along with the rest, and so are the training
+     * tables they are still held in.
+     * @throws IllegalStateException if MarkovGenerator has not been finalized.
+     */
+    public ModelFootprint footprint() throws IllegalStateException{
+    	lock.writeLock().lock();
+    	try {
+    		if (!finalized)
+    			throw new IllegalStateException("MarkovGenerator has not yet been finalized.");
+    		Snapshot<T> current = snapshot;
+    		CompactTrie<T,MarkovMap<T>> added = current.added;
+    		long nodes = frozen.nodeCount() + (added == null ? 0 : added.nodeCount());
+    		long suffixes = suffixCount(frozen) + (added == null ? 0 : suffixCount(added));
+    		ModelFootprint footprint = new ModelFootprint(order, contextCount(), nodes, nodes - 1, suffixes);
+    		addFootprint(footprint, frozen, current.samplers);
+    		if (added != null) {
+    			addFootprint(footprint, added, current.addedSamplers);
+    			footprint.add("training trie", trieBytes(added.nodeCount(), added.leafCount()));
+    			footprint.add("training index", indexBytes(subsequences.size(), order));
+    		}
+    		return footprint;
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
+    }
+    
+    private static <T> long suffixCount(CompactTrie<T,MarkovMap<T>> trie) {
+    	long suffixes = 0;
+    	for (int node = 0; node < trie.nodeCount(); node++) {
+    		MarkovMap<T> m = trie.valueAt(node);
+    		if (m != null)
+    			suffixes += m.suffixCount();
+    	}
+    	return suffixes;
+    }
+    
+    /**
+     * Adds the bytes of a CompactTrie, its MarkovMaps and their samplers, and the successor links of
+     * frozen, to a footprint.
+     */
+    @SuppressWarnings("unchecked")
+    private void addFootprint(ModelFootprint footprint, CompactTrie<T,MarkovMap<T>> trie, PagedArray samplers) {
+    	long contexts = 0;
+    	long samplerBytes = ModelFootprint.array(samplers.length(), ModelFootprint.REFERENCE);
+    	long successorBytes = 0;
+    	long suffixes = 0;
+    	for (int node = 0; node < trie.nodeCount(); node++) {
+    		MarkovMap<T> m = trie.valueAt(node);
+    		if (m != null) {
+    			contexts++;
+    			suffixes += m.suffixCount();
+    		}
+    		if (samplers.get(node) != null) {
+    			int k = ((MarkovMap.Sampler<T>) samplers.get(node)).size();
+    			samplerBytes += samplerBytes(k);
+    			if (trie == frozen && !backOff)
+    				successorBytes += ModelFootprint.array(k, 4);
+    		}
+    	}
+    	footprint.add("compact trie", compactTrieBytes(trie.nodeCount()));
+    	footprint.add("markov maps", markovMapBytes(contexts, suffixes));
+    	footprint.add("samplers", samplerBytes);
+    	if (trie == frozen && !backOff)
+    		footprint.add("successor links", successorBytes + ModelFootprint.array(trie.nodeCount(), 4)
+    				+ ModelFootprint.array(trie.nodeCount(), ModelFootprint.REFERENCE));
+    }
+    
+    /**
+     * Projects the heap a generator of order <code>order</code>, without back-off, would take for an input
+     * with the given numbers of distinct subsequences, such as those estimated by a FootprintEstimator.
+     * The footprint holds the structures of the finalized model, and its peak is the most heap taken
+     * while finalizing, when the Trie and index used for training are alive along with the CompactTrie
+     * and samplers made from them.
+     * @param nodes the nodes of the Trie: one for each distinct subsequence of length 1 to <code>order</code>,
+     * and the root.
+     * @param contexts the distinct subsequences of length <code>order</code> followed by at least one item.
+     * @param suffixes the distinct (context, suffix) pairs.
+     */
+    public static ModelFootprint projectFootprint(int order, long nodes, long contexts, long suffixes) {
+    	long compact = compactTrieBytes(nodes);
+    	long maps = markovMapBytes(contexts, suffixes);
+    	long samplers = ModelFootprint.array(nodes, ModelFootprint.REFERENCE) + contexts * samplerBytes(0)
+    			+ 8 * suffixes;
+    	long successors = ModelFootprint.array(nodes, 4) + ModelFootprint.array(nodes, ModelFootprint.REFERENCE)
+    			+ contexts * ModelFootprint.array(0, 4) + 4 * suffixes;
+    	long training = trieBytes(nodes, contexts) + indexBytes(contexts, order) + maps;
+    	//freezing lists every node, key and value of the Trie before packing them into arrays
+    	long freezing = 3 * ModelFootprint.array(nodes * 3 / 2, ModelFootprint.REFERENCE);
+
+    	ModelFootprint footprint = new ModelFootprint(order, contexts, nodes, nodes - 1, suffixes);
+    	footprint.add("compact trie", compact);
+    	footprint.add("markov maps", maps);
+    	footprint.add("samplers", samplers);
+    	footprint.add("successor links", successors);
+    	footprint.setPeakBytes(Math.max(training + samplers + compact + freezing, footprint.totalBytes()));
+    	return footprint;
+    }
+    
+    /**
+     * Estimates the bytes of a CompactTrie of <code>nodes</code> nodes: four arrays with one slot per node.
+     */
+    private static long compactTrieBytes(long nodes) {
+    	return ModelFootprint.object(5 * 4) + ModelFootprint.array(nodes + 1, 4) + ModelFootprint.array(nodes, 4)
+    			+ 2 * ModelFootprint.array(nodes, ModelFootprint.REFERENCE);
+    }
+    
+    /**
+     * Estimates the bytes of <code>contexts</code> MarkovMaps holding <code>suffixes</code> suffixes in all:
+     * each map and its TreeMap, and a TreeMap entry and a count per suffix.
+     */
+    private static long markovMapBytes(long contexts, long suffixes) {
+    	long map = ModelFootprint.object(3 * ModelFootprint.REFERENCE + 4 + 1);
+    	long treeMap = ModelFootprint.object(7 * ModelFootprint.REFERENCE + 2 * 4);
+    	long entry = ModelFootprint.object(5 * ModelFootprint.REFERENCE + 1);
+    	return contexts * (map + treeMap) + suffixes * (entry + ModelFootprint.array(1, 4));
+    }
+    
+    /**
+     * Estimates the bytes of a Sampler of <code>k</code> suffixes.
+     */
+    private static long samplerBytes(int k) {
+    	return ModelFootprint.object(2 * ModelFootprint.REFERENCE) + ModelFootprint.array(k, ModelFootprint.REFERENCE)
+    			+ ModelFootprint.array(k, 4);
+    }
+    
+    /**
+     * Estimates the bytes of a Trie of <code>nodes</code> nodes: a Node and a HashMap for each, a HashMap
+     * entry for each edge, and a table of the smallest size for each node with children.
+     */
+    private static long trieBytes(long nodes, long leaves) {
+    	long node = ModelFootprint.object(4 * ModelFootprint.REFERENCE);
+    	long hashMap = ModelFootprint.object(4 * ModelFootprint.REFERENCE + 4 * 4);
+    	long entry = ModelFootprint.object(4 + 3 * ModelFootprint.REFERENCE);
+    	long table = ModelFootprint.array(16, ModelFootprint.REFERENCE);
+    	return nodes * (node + hashMap) + (nodes - 1) * entry + (nodes - leaves) * table;
+    }
+    
+    /**
+     * Estimates the bytes taken in an NGramIndex by <code>contexts</code> subsequences of length
+     * <code>order</code>: a slot of hash, key and value, three per subsequence on average since the index
+     * is kept at most half full, and a copy of each key.
+     */
+    private static long indexBytes(long contexts, int order) {
+    	return contexts * (3 * (8 + 2 * ModelFootprint.REFERENCE) + ModelFootprint.array(order, ModelFootprint.REFERENCE));
+    }
+    
+    /**
+     * Sets where training, finalizing and sessions report their measurements, such as a MarkovStats.
+     * Measurements made before the call go to the metrics set before it.
+     * @param metrics the metrics, or <code>MarkovMetrics.NONE</code> to stop measuring.
+     */
+    public void setMetrics(MarkovMetrics metrics) {
+    	if (metrics == null)
+    		throw new IllegalArgumentException("metrics must not be null; use MarkovMetrics.NONE instead.");
+    	this.metrics = metrics;
+    }
+    
+    /**
+     * Gets the metrics the generator and its sessions report to.
+     */
+    public MarkovMetrics metrics() {
+    	return metrics;
+    }
+    
+    /**
+     * Gets the most recently published Snapshot of the model, for use by sessions.
+     */
+    Snapshot<T> snapshot(){
+		return snapshot;
     }
  
     
@@ -145,61 +891,160 @@ public class MarkovGenerator<T> {
      * how often each occurs, and how often each suffix occurs.
      */
     public String toString(){
-		StringBuilder sb = new StringBuilder();
-		System.out.println(subsequences.size() + " k-tuples:");
-		Iterator<MarkovMap<T>> itr = subsequences.valuesIterator();
-		while(itr.hasNext())
-			sb.append(itr.next().toString()+"\n");
-		return sb.toString();
+    	lock.writeLock().lock();
+    	try {
+    		StringBuilder sb = new StringBuilder();
+    		System.out.println(size() + " k-tuples:");
+    		if (finalized) {
+    			Iterator<MarkovMap<T>> itr = frozen.valuesIterator();
+    			while(itr.hasNext())
+    				sb.append(itr.next().toString()+"\n");
+    		}
+    		if (subsequences != null && !subsequences.isEmpty()) {
+    			Iterator<MarkovMap<T>> itr = subsequences.valuesIterator();
+    			while(itr.hasNext())
+    				sb.append(itr.next().toString()+"\n");
+    		}
+    		return sb.toString();
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
     }
 	
 	/**
 	* Uses the complete Markov model to generate a random sequence of given length
 	* based on the model and the previous sequence of items generated.
+	* Not thread-safe; use a MarkovSession per thread instead.
 	* @param length the length of output to generate
 	* @throws IllegalStateException if <code>finalize()</code> has not been called.
 	*/
 	public List<T> generateList(int length) throws IllegalStateException{
-		List<T> fullSeq = new ArrayList<T>(length);
-		fullSeq.addAll(outputSubseq);
-		while(fullSeq.size() < length){
-			fullSeq.add(generate());
-		}
-		return fullSeq;
+		if (!finalized)
+			throw new IllegalStateException("MarkovGenerator has not yet been finalized.");
+		return defaultSession.generateList(length);
 	}
 	
 	/**
 	* Uses the complete Markov model to generate a random item based on the model
 	* and the previous sequence of items generated.
+	* Not thread-safe; use a MarkovSession per thread instead.
 	* @throws IllegalStateException if MarkovGenerator has not been finalized.
 	*/
 	public T generate() throws IllegalStateException{
 		if (!finalized)
 			throw new IllegalStateException("MarkovGenerator has not yet been finalized.");
-		//This is how the program keeps track of having reset to the start of the sequence.
-		if (outputSubseq.size() < order) {
-			int index = outputSubseq.size() - 1;
-			outputSubseq.push(firstInputSubseq.get(index + 1));
-			return outputSubseq.peekLast();
+		return defaultSession.generate();
+	}
+
+	/**
+	 * The model as published at one moment: the samplers of the frozen subsequences and their successors,
+	 * indexed by node, and those of the subsequences added since they were frozen. A Snapshot is never modified, so a
+	 * session sees either all of an update or none of it.
+	 */
+	static final class Snapshot<T> {
+		private final CompactTrie<T,MarkovMap<T>> frozen;
+		/**The Sampler of each node of frozen, or null.*/
+		private final PagedArray samplers;
+		/**Element i of the int[] at node is the frozen node that suffix i of the node's sampler leads to, or -1.
+		 * Null in a back-off model, where the longest known suffix is looked up for every item instead.*/
+		private final PagedArray successors;
+		private final CompactTrie<T,MarkovMap<T>> added;
+		private final PagedArray addedSamplers;
+		private final boolean pruned;
+		private final boolean backOff;
+
+		Snapshot(CompactTrie<T,MarkovMap<T>> frozen, PagedArray samplers, PagedArray successors,
+				CompactTrie<T,MarkovMap<T>> added, PagedArray addedSamplers, boolean pruned, boolean backOff) {
+			this.frozen = frozen;
+			this.samplers = samplers;
+			this.successors = successors;
+			this.added = added;
+			this.addedSamplers = addedSamplers;
+			this.pruned = pruned;
+			this.backOff = backOff;
+		}
+
+		/**
+		 * Chooses the subsequence to replay when generation reaches one with no known successor.
+		 * That is normally the first subsequence of the input. In a pruned model, where that
+		 * could lead straight back into pruned subsequences, it is a random subsequence of the model.
+		 */
+		List<T> restart(List<T> firstInputSubseq, RandomGenerator random) {
+			return pruned ? frozen.randomKey(random) : firstInputSubseq;
+		}
+
+		/**
+		 * Finds the frozen node of <code>seq</code>, from which a session can follow successor links.
+		 * @return the node, or -1 if <code>seq</code> is not a frozen subsequence with a sampler,
+		 * or this is a back-off model.
+		 */
+		int node(ContextWindow<T> seq) {
+			if (backOff)
+				return -1;
+			int node = frozen.node(seq);
+			return node >= 0 && samplers.get(node) != null ? node : -1;
+		}
+
+		/**
+		 * Tells whether the nodes found in <code>other</code> are the same nodes in this Snapshot.
+		 * They are until the model is next compacted.
+		 */
+		boolean sameNodes(Snapshot<T> other) {
+			return other != null && frozen == other.frozen;
+		}
+
+		@SuppressWarnings("unchecked")
+		MarkovMap.Sampler<T> samplerAt(int node) {
+			return (MarkovMap.Sampler<T>) samplers.get(node);
+		}
+
+		/**
+		 * Gets the frozen node which suffix <code>index</code> of the sampler of <code>node</code> leads to.
+		 * @return the node, or -1 if that subsequence is not frozen.
+		 */
+		int successor(int node, int index) {
+			return ((int[]) successors.get(node))[index];
+		}
+
+		/**
+		 * Gets the Sampler of the suffixes of <code>seq</code> when <code>node()</code> found none:
+		 * that of a subsequence added since the last compaction, or in a back-off model, that of the
+		 * longest suffix of <code>seq</code> that has any.
+		 * @return the Sampler, or null if <code>seq</code> has no known successor.
+		 */
+		@SuppressWarnings("unchecked")
+		MarkovMap.Sampler<T> unlinkedSampler(ContextWindow<T> seq) {
+			if (backOff)
+				return longestSampler(seq);
+			if (added == null)
+				return null;
+			int node = added.node(seq);
+			return node < 0 ? null : (MarkovMap.Sampler<T>) addedSamplers.get(node);
 		}
-		else {
-			T nextRand = nextRandom(outputSubseq);
-			//If nextRandom returns null, that means outputSubeq is the last subsequence in the source 
-			//and has no Markov model associated with it.
-			//In this case, reset to the first subsequence.
-			if (nextRand == null) {
-				outputSubseq.clear();
-				outputSubseq.push(firstInputSubseq.get(0));
-				return outputSubseq.peekLast();
+
+		/**
+		 * Walks down frozen, and added, by the items of the output newest first, and returns the Sampler
+		 * found deepest, which belongs to the longest known suffix. A subsequence is in at most one of the two.
+		 */
+		@SuppressWarnings("unchecked")
+		private MarkovMap.Sampler<T> longestSampler(ContextWindow<T> seq) {
+			MarkovMap.Sampler<T> longest = null;
+			int node = 0;
+			int addedNode = added == null ? -1 : 0;
+			for (int i = 0; i < seq.size() && (node >= 0 || addedNode >= 0); i++) {
+				T item = seq.newest(i);
+				if (node >= 0) {
+					node = frozen.child(node, item);
+					if (node >= 0 && samplers.get(node) != null)
+						longest = (MarkovMap.Sampler<T>) samplers.get(node);
+				}
+				if (addedNode >= 0) {
+					addedNode = added.child(addedNode, item);
+					if (addedNode >= 0 && addedSamplers.get(addedNode) != null)
+						longest = (MarkovMap.Sampler<T>) addedSamplers.get(addedNode);
+				}
 			}
-			else{
-				//shift left
-				outputSubseq.remove();
-				outputSubseq.add(nextRand);
-	        }
-			return nextRand;
+			return longest;
 		}
 	}
-
 }
-
@@ -0,0 +1,300 @@
+package world.info.minorcline;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class MarkovGeneratorTest {
+	private MarkovGenerator<Character> sut;
+	private boolean pass = true;
+
+	public static void main(String[] args){
+		MarkovGeneratorTest test = new MarkovGeneratorTest();
+		test.runTests();
+	}
+
+	public void runTests(){
+		Map<String, Boolean> testResults = new HashMap<>();
+
+		testResults.put("testSize", testSize());
+		testResults.put("testGenerateRestartsAtDeadEnd", testGenerateRestartsAtDeadEnd());
+		testResults.put("testGenerateBeforeFinalize", testGenerateBeforeFinalize());
+		testResults.put("testSeededSessionsAgree", testSeededSessionsAgree());
+		testResults.put("testConcurrentSessions", testConcurrentSessions());
+		testResults.put("testConcurrentTraining", testConcurrentTraining());
+		testResults.put("testAddAfterFinalize", testAddAfterFinalize());
+		testResults.put("testBudgetBoundsSize", testBudgetBoundsSize());
+		testResults.put("testPruneKeepsFrequent", testPruneKeepsFrequent());
+		testResults.put("testBackOffToShorterContext", testBackOffToShorterContext());
+		testResults.put("testMetrics", testMetrics());
+		testResults.put("testFlightRecorderEvents", testFlightRecorderEvents());
+		testResults.put("testParallelFinalizeIsDeterministic", testParallelFinalizeIsDeterministic());
+
+		for (Entry<String, Boolean> e : testResults.entrySet()){
+			if (e.getValue() == false){
+				System.out.println("Test failure: " + e.getKey());
+				pass = false;
+			}
+		}
+		if (pass)
+			System.out.println("Passed all tests.");
+	}
+
+	private static List<Character> chars(String s){
+		List<Character> list = new ArrayList<>();
+		for (char c : s.toCharArray())
+			list.add(c);
+		return list;
+	}
+
+	private static String join(List<Character> list){
+		StringBuilder sb = new StringBuilder();
+		for (Character c : list)
+			sb.append(c);
+		return sb.toString();
+	}
+
+	public boolean testSize(){
+		sut = new MarkovGenerator<>(2);
+		sut.addIterator(chars("abababab").iterator());
+		return sut.size() == 2;
+	}
+
+	public boolean testGenerateRestartsAtDeadEnd(){
+		sut = new MarkovGenerator<>(2);
+		sut.addIterator(chars("abcd").iterator());
+		sut.finalizeGenerator();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 8; i++)
+			sb.append(sut.generate());
+		return "cdabcdab".equals(sb.toString());
+	}
+
+	public boolean testGenerateBeforeFinalize(){
+		sut = new MarkovGenerator<>(2);
+		sut.addIterator(chars("abcd").iterator());
+		try{
+			sut.generate();
+		} catch (IllegalStateException e){
+			return true;
+		}
+		return false;
+	}
+
+	public boolean testSeededSessionsAgree(){
+		sut = new MarkovGenerator<>(1);
+		sut.addIterator(chars("abacadaeabbcdde").iterator());
+		sut.finalizeGenerator();
+		String first = join(sut.newSession(new SplittableRandom(42)).generateList(200));
+		String second = join(sut.newSession(new SplittableRandom(42)).generateList(200));
+		return first.equals(second);
+	}
+
+	//Every pair of neighbouring items generated must also be neighbours in the input,
+	//counting the restart from the end of the input back to its start.
+	public boolean testConcurrentSessions(){
+		String input = "the quick brown fox jumps over the lazy dog";
+		sut = new MarkovGenerator<>(1);
+		sut.addIterator(chars(input).iterator());
+		sut.finalizeGenerator();
+		String cycle = input + input.charAt(0);
+		AtomicBoolean ok = new AtomicBoolean(true);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++){
+			Thread thread = new Thread(() -> {
+				String out = join(sut.newSession().generateList(5000));
+				for (int i = 1; i < out.length(); i++){
+					if (!cycle.contains(out.substring(i - 1, i + 1)))
+						ok.set(false);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads){
+			try{
+				thread.join();
+			} catch (InterruptedException e){
+				return false;
+			}
+		}
+		return ok.get();
+	}
+
+	//Eight threads train one model on inputs that each start differently. The model must match one trained on
+	//the same inputs one after another, and since any of the inputs may be counted last, seeded output must
+	//match that of a model trained with one of them last.
+	public boolean testConcurrentTraining(){
+		List<List<Character>> inputs = new ArrayList<>();
+		SplittableRandom random = new SplittableRandom(11);
+		for (int t = 0; t < 8; t++){
+			StringBuilder sb = new StringBuilder("start" + t);
+			for (int i = 0; i < 20000; i++)
+				sb.append((char) ('a' + random.nextInt(6)));
+			inputs.add(chars(sb.toString()));
+		}
+		sut = new MarkovGenerator<>(3);
+		List<Thread> threads = new ArrayList<>();
+		for (List<Character> input : inputs){
+			Thread thread = new Thread(() -> sut.addIterator(input.iterator()));
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads){
+			try{
+				thread.join();
+			} catch (InterruptedException e){
+				return false;
+			}
+		}
+		sut.finalizeGenerator();
+		List<Character> output = sut.newSession(new SplittableRandom(3)).generateList(5000);
+		boolean matched = false;
+		for (int last = 0; last < inputs.size(); last++){
+			MarkovGenerator<Character> expected = new MarkovGenerator<>(3);
+			for (int i = 1; i <= inputs.size(); i++)
+				expected.addIterator(inputs.get((last + i) % inputs.size()).iterator());
+			expected.finalizeGenerator();
+			if (sut.size() != expected.size())
+				return false;
+			if (output.equals(expected.newSession(new SplittableRandom(3)).generateList(5000)))
+				matched = true;
+		}
+		return matched;
+	}
+
+	//Training after finalizing adds "zz", so a session that reaches 'z' no longer restarts.
+	public boolean testAddAfterFinalize(){
+		sut = new MarkovGenerator<>(1);
+		sut.addIterator(chars("abcdefghijklmnopqrstuvwxyz").iterator());
+		sut.finalizeGenerator();
+		MarkovSession<Character> session = sut.newSession(new SplittableRandom(1));
+		String before = join(session.generateList(30));
+		if (!sut.addIterator(chars("zz").iterator()))
+			return false;
+		String after = join(session.generateList(60));
+		return before.equals("abcdefghijklmnopqrstuvwxyzabcd")
+				&& after.equals("defghijklmnopqrstuvwxyz" + "z".repeat(37))
+				&& sut.size() == 26;
+	}
+
+	//Order 8 on random words has far more subsequences than the budget; generation must still go on.
+	public boolean testBudgetBoundsSize(){
+		char[] corpus = MarkovBenchmark.syntheticCorpus(1 << 15, 7);
+		List<Character> input = new ArrayList<>();
+		for (char c : corpus)
+			input.add(c);
+		sut = new MarkovGenerator<>(8, 500, 2);
+		sut.addIterator(input.iterator());
+		if (sut.size() > 500)
+			return false;
+		sut.finalizeGenerator();
+		String out = join(sut.newSession(new SplittableRandom(3)).generateList(2000));
+		return out.length() == 2000;
+	}
+
+	//Adding 'e' to the full budget of a, b, c and d prunes it down to three: 'a' starts the input, and b and c
+	//are the most frequent of the rest, so d goes, and with it the rare suffix 'd' of a.
+	public boolean testPruneKeepsFrequent(){
+		sut = new MarkovGenerator<>(1, 4, 1);
+		sut.addIterator(chars("abcabcabcabcabcadef").iterator());
+		sut.finalizeGenerator();
+		String out = join(sut.newSession(new SplittableRandom(5)).generateList(200));
+		return sut.size() == 4 && out.contains("c") && !out.contains("d");
+	}
+
+	//"bcd" is never followed by anything, but "cd" is followed by 'e', so back-off goes on to 'e'
+	//where a fixed order would restart.
+	public boolean testBackOffToShorterContext(){
+		sut = new MarkovGenerator<>(3, true);
+		sut.addIterator(chars("zcde").iterator());
+		sut.addIterator(chars("abcd").iterator());
+		sut.finalizeGenerator();
+		return "abcdeabcdeab".equals(join(sut.newSession().generateList(12)));
+	}
+
+	//"abcabd" has the subsequences ab, bc and ca with suffixes, of which "ab" is followed by 'c' and 'd'.
+	//Of the 12 generating calls, the one that generates nothing has no time per item.
+	public boolean testMetrics(){
+		MarkovStats stats = new MarkovStats();
+		sut = new MarkovGenerator<>(2);
+		sut.setMetrics(stats);
+		sut.addIterator(chars("abcabd").iterator());
+		sut.addIterator(chars("ab").iterator());
+		sut.finalizeGenerator();
+		MarkovSession<Character> session = sut.newSession(new SplittableRandom(1));
+		for (int i = 0; i < 10; i++)
+			session.generate();
+		session.generateList(session.generateList(0).size() + 20);
+		sut.addIterator(chars("bcx").iterator());
+		return stats.inputs() == 3 && stats.itemsTrained() == 11 && stats.contexts() == 3
+				&& stats.suffixes() == 4 && stats.maxSuffixes() == 2 && stats.finalizeNanos() > 0
+				&& stats.trainingLatency().count() == 3 && stats.publishLatency().count() == 1
+				&& stats.itemsGenerated() == 30 && stats.generationLatency().count() == 11
+				&& stats.trainingThroughput() > 0;
+	}
+
+	public boolean testFlightRecorderEvents(){
+		try (Recording recording = new Recording()){
+			for (String event : List.of("Training", "Finalize", "Compaction", "Publish", "Generation"))
+				recording.enable("world.info.minorcline." + event);
+			recording.start();
+			sut = new MarkovGenerator<>(2);
+			sut.addIterator(chars("abcabd").iterator());
+			sut.finalizeGenerator();
+			sut.newSession().generateList(10);
+			sut.addIterator(chars("bcx").iterator());
+			recording.stop();
+			Path file = Files.createTempFile("MarkovGeneratorTest", ".jfr");
+			file.toFile().deleteOnExit();
+			recording.dump(file);
+			Set<String> names = new TreeSet<>();
+			for (RecordedEvent e : RecordingFile.readAllEvents(file)){
+				names.add(e.getEventType().getName());
+				if (e.getEventType().getName().endsWith("Compaction") && e.getInt("maxSuffixes") != 2)
+					return false;
+			}
+			return names.size() == 5;
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	//Large enough to be split into several tasks, on however many threads the pool has.
+	public boolean testParallelFinalizeIsDeterministic(){
+		List<Character> input = chars(new String(MarkovBenchmark.syntheticCorpus(1 << 16, 3)));
+		MarkovGenerator<Character> serial = new MarkovGenerator<>(6);
+		serial.addIterator(input.iterator());
+		ForkJoinPool one = new ForkJoinPool(1);
+		serial.finalizeGenerator(one);
+		sut = new MarkovGenerator<>(6);
+		sut.addIterator(input.iterator());
+		ForkJoinPool four = new ForkJoinPool(4);
+		sut.finalizeGenerator(four);
+		List<Character> expected = serial.newSession(new SplittableRandom(9)).generateList(5000);
+		List<Character> actual = sut.newSession(new SplittableRandom(9)).generateList(5000);
+		//compacting again after more training also builds its samplers on the pool
+		List<Character> more = chars(new String(MarkovBenchmark.syntheticCorpus(1 << 16, 4)));
+		serial.addIterator(more.iterator());
+		sut.addIterator(more.iterator());
+		boolean same = serial.size() > 1 << 12 && expected.equals(actual)
+				&& serial.newSession(new SplittableRandom(2)).generateList(5000)
+						.equals(sut.newSession(new SplittableRandom(2)).generateList(5000));
+		one.shutdown();
+		four.shutdown();
+		return same;
+	}
+}
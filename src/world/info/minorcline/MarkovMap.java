@@ -6,22 +6,26 @@ package world.info.minorcline;
 * @author M. Cline August 2014
 * 
 * November 2018 Refactored for minor optimization and to generalize for any Iterable.
+* 
+* October 2026 Samples from cumulative counts of distinct suffixes instead of an expanded list.
+* The prepared counts are an immutable Sampler, so a model can keep sampling from them while new counts arrive.
+* Rare suffixes can be pruned to bound the memory of a model.
 */
 
 import java.util.TreeMap;
-import java.lang.Math;
-import java.util.ArrayList;
 import java.util.Map;
 import java.util.Iterator;
-import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 public class MarkovMap<T>{
 	/**Number of documented occurrences of the node sequence*/
 	private int freq;
-	/**The Markov state-change map itself, with frequencies in integers rather than probabilities*/
-	private TreeMap<T, Integer> occurrenceMap;
-	/**A prepared O(1) map for fast Markov chain generation**/
-	private ArrayList<T> randMap;
+	/**The Markov state-change map itself, with frequencies in integers rather than probabilities.
+	 * Each count is a one-element array that is incremented in place, so counting allocates nothing.*/
+	private TreeMap<T, int[]> occurrenceMap;
+	/**The counts as of the last getReady(), prepared for fast Markov chain generation**/
+	private Sampler<T> sampler;
 	private boolean ready;
 	
 	/**Construct a new MarkovMap for the node state T <code>state</code>
@@ -30,8 +34,8 @@ public class MarkovMap<T>{
 	public MarkovMap(){
 		freq = 0;
 		ready = false;
-		occurrenceMap = new TreeMap<T, Integer>();
-		randMap = null;
+		occurrenceMap = new TreeMap<T, int[]>();
+		sampler = null;
 	}
 	
 	/**Document an instance of a suffix following the node.
@@ -41,43 +45,113 @@ public class MarkovMap<T>{
 	*/
 	public boolean add(T suffix){
 		if (ready) ready = false;
-		int f = 0;
-		try{
-			f = occurrenceMap.get(suffix);
-		}catch (NullPointerException e){
-			f = 0;
-		}
-		occurrenceMap.put(suffix, ++f);
 		freq++;
-		if (f == 1) return true;
+		int[] f = occurrenceMap.get(suffix);
+		if (f == null){
+			occurrenceMap.put(suffix, new int[] {1});
+			return true;
+		}
+		f[0]++;
 		return false;
 	}
 	
+	/**
+	 * @return the total count of all suffixes documented in this map.
+	 */
+	public int frequency(){
+		return freq;
+	}
+	
+	/**
+	 * @return the number of distinct suffixes documented in this map.
+	 */
+	public int suffixCount(){
+		return occurrenceMap.size();
+	}
+	
+	/**
+	 * Forgets the suffixes documented fewer than <code>minCount</code> times, except for the most
+	 * frequent suffix, which is always kept. <code>getReady()</code> must be called again afterwards.
+	 * @return the number of distinct suffixes removed.
+	 */
+	public int prune(int minCount){
+		T best = null;
+		int bestCount = 0;
+		for (Map.Entry<T,int[]> e : occurrenceMap.entrySet()){
+			if (e.getValue()[0] > bestCount){
+				best = e.getKey();
+				bestCount = e.getValue()[0];
+			}
+		}
+		int removed = 0;
+		Iterator<Map.Entry<T,int[]>> itr = occurrenceMap.entrySet().iterator();
+		while(itr.hasNext()){
+			Map.Entry<T,int[]> nextEntry = itr.next();
+			if (nextEntry.getValue()[0] < minCount && nextEntry.getKey() != best){
+				freq -= nextEntry.getValue()[0];
+				itr.remove();
+				removed++;
+			}
+		}
+		if (removed > 0) ready = false;
+		return removed;
+	}
+	
 	 /**
-	 * Produces a random suffix state based on the model.
+	 * Produces a random suffix state based on the model, using the current thread's random number generator.
 	 * @throws IllegalStateException if getReady() has not been called yet.
 	 */
 	public T random() throws IllegalStateException{
+		return random(ThreadLocalRandom.current());
+	}
+	
+	 /**
+	 * Produces a random suffix state based on the model.
+	 * Each suffix is chosen with probability proportional to its count, found by binary search
+	 * over the cumulative counts in O(log k) for k distinct suffixes.
+	 * Once ready, a MarkovMap is only read, so any number of threads may call this at once.
+	 * @param random the source of randomness, which should not be shared between threads.
+	 * @throws IllegalStateException if getReady() has not been called yet.
+	 */
+	public T random(RandomGenerator random) throws IllegalStateException{
 		if(!ready)
 			throw new IllegalStateException("This MarkovMap has not been readied for text generation yet.");
-		int rand = (int)(Math.random()*freq);
-		return randMap.get(rand);
+		return sampler.random(random);
+	}
+	
+	/**
+	 * @return true if getReady() has been called since the last suffix was added.
+	 */
+	public boolean isReady(){
+		return ready;
+	}
+	
+	/**
+	 * Gets the Sampler made by the last call to getReady(), even if suffixes have been added since,
+	 * or null if getReady() has never been called.
+	 */
+	Sampler<T> sampler(){
+		return sampler;
 	}
 	
 	 /**
 	 * Prepares the MarkovMap for fast random chain generation. Must be called before <code>random()</code> can be called.
+	 * Uses memory proportional to the number of distinct suffixes, not to their total count.
 	 */
 	public void getReady(){
-		randMap = new ArrayList<T>(freq);
-		Iterator<Map.Entry<T,Integer>> itr = occurrenceMap.entrySet().iterator();
+		Object[] suffixes = new Object[occurrenceMap.size()];
+		int[] cumulative = new int[occurrenceMap.size()];
+		int i = 0;
+		int total = 0;
+		Iterator<Map.Entry<T,int[]>> itr = occurrenceMap.entrySet().iterator();
 		while(itr.hasNext()){
-			Map.Entry<T,Integer> nextEntry = itr.next();
-			int nextVal = nextEntry.getValue();
-			T nextKey = nextEntry.getKey();
-			for(int i=0; i<nextVal; i++){
-				randMap.add(nextKey);
-			}
+			Map.Entry<T,int[]> nextEntry = itr.next();
+			total += nextEntry.getValue()[0];
+			suffixes[i] = nextEntry.getKey();
+			cumulative[i] = total;
+			i++;
 		}
+		sampler = new Sampler<T>(suffixes, cumulative);
 		ready = true;
 	}
 
@@ -88,12 +162,62 @@ public class MarkovMap<T>{
 	public String showData(){
 		StringBuilder sb = new StringBuilder(freq + " ");
 		
-		Iterator<Map.Entry<T,Integer>> itr = occurrenceMap.entrySet().iterator();
+		Iterator<Map.Entry<T,int[]>> itr = occurrenceMap.entrySet().iterator();
 		while(itr.hasNext()){
-			Map.Entry<T,Integer> nextEntry = itr.next();
-			sb.append(" " + nextEntry.getValue() + " " + nextEntry.getKey()+ "\n");
+			Map.Entry<T,int[]> nextEntry = itr.next();
+			sb.append(" " + nextEntry.getValue()[0] + " " + nextEntry.getKey()+ "\n");
 		}
 		
 		return sb.toString();		
 	}
+
+	/**
+	 * The distinct suffixes of a MarkovMap with their cumulative counts, as of one call to getReady().
+	 * A Sampler is never modified, so it can be read from any thread once it has been safely published.
+	 */
+	static final class Sampler<T>{
+		/**The distinct suffixes in key order**/
+		private final Object[] suffixes;
+		/**cumulative[i] is the total count of suffixes[0..i]**/
+		private final int[] cumulative;
+
+		Sampler(Object[] suffixes, int[] cumulative){
+			this.suffixes = suffixes;
+			this.cumulative = cumulative;
+		}
+
+		T random(RandomGenerator random){
+			return suffix(randomIndex(random));
+		}
+
+		/**
+		 * Chooses the index of a suffix, with probability proportional to its count.
+		 */
+		int randomIndex(RandomGenerator random){
+			int rand = random.nextInt(cumulative[cumulative.length - 1]);
+			//find the first suffix whose cumulative count exceeds rand
+			int lo = 0;
+			int hi = cumulative.length - 1;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (cumulative[mid] > rand)
+					hi = mid;
+				else
+					lo = mid + 1;
+			}
+			return lo;
+		}
+
+		@SuppressWarnings("unchecked")
+		T suffix(int index){
+			return (T) suffixes[index];
+		}
+
+		/**
+		 * @return the number of distinct suffixes.
+		 */
+		int size(){
+			return suffixes.length;
+		}
+	}
 }
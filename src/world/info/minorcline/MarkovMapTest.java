@@ -0,0 +1,87 @@
+package world.info.minorcline;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+public class MarkovMapTest {
+	private MarkovMap<String> sut;
+	private boolean pass = true;
+
+	public static void main(String[] args){
+		MarkovMapTest test = new MarkovMapTest();
+		test.runTests();
+	}
+
+	public void runTests(){
+		Map<String, Boolean> testResults = new HashMap<>();
+
+		testResults.put("testAddFirstTime", testAddFirstTime());
+		testResults.put("testAddAgain", testAddAgain());
+		testResults.put("testRandomBeforeReady", testRandomBeforeReady());
+		testResults.put("testRandomSingleSuffix", testRandomSingleSuffix());
+		testResults.put("testRandomFollowsCounts", testRandomFollowsCounts());
+
+		for (Entry<String, Boolean> e : testResults.entrySet()){
+			if (e.getValue() == false){
+				System.out.println("Test failure: " + e.getKey());
+				pass = false;
+			}
+		}
+		if (pass)
+			System.out.println("Passed all tests.");
+	}
+
+	public boolean testAddFirstTime(){
+		sut = new MarkovMap<>();
+		return sut.add("a");
+	}
+
+	public boolean testAddAgain(){
+		sut = new MarkovMap<>();
+		sut.add("a");
+		return !sut.add("a");
+	}
+
+	public boolean testRandomBeforeReady(){
+		sut = new MarkovMap<>();
+		sut.add("a");
+		try{
+			sut.random();
+		} catch (IllegalStateException e){
+			return true;
+		}
+		return false;
+	}
+
+	public boolean testRandomSingleSuffix(){
+		sut = new MarkovMap<>();
+		sut.add("a");
+		sut.add("a");
+		sut.getReady();
+		for (int i = 0; i < 100; i++){
+			if (!"a".equals(sut.random()))
+				return false;
+		}
+		return true;
+	}
+
+	//"a" is added once and "b" three times, so "b" should come up about three times as often.
+	public boolean testRandomFollowsCounts(){
+		sut = new MarkovMap<>();
+		sut.add("a");
+		sut.add("b");
+		sut.add("b");
+		sut.add("b");
+		sut.getReady();
+		int a = 0;
+		int b = 0;
+		for (int i = 0; i < 40000; i++){
+			String s = sut.random();
+			if ("a".equals(s)) a++;
+			else if ("b".equals(s)) b++;
+			else return false;
+		}
+		return a > 9000 && a < 11000 && b > 29000 && b < 31000;
+	}
+}
@@ -0,0 +1,54 @@
+package world.info.minorcline;
+
+/**
+ * Receives measurements of a MarkovGenerator while it trains and generates, so that its throughput and
+ * latency can be watched under live load. Every method does nothing unless overridden, so an implementation
+ * only handles the measurements it cares about; MarkovStats records all of them.
+ *
+ * A generator reports to <code>NONE</code> until it is given other metrics, and its sessions do not even
+ * read the clock for it, so metrics that are not used cost nothing.
+ * The methods may be called from many threads at once, by concurrent training and by sessions.
+ */
+
+public interface MarkovMetrics {
+	/**Ignores every measurement.*/
+	MarkovMetrics NONE = new MarkovMetrics() {};
+
+	/**
+	 * Called after each input is counted by <code>addIterator()</code>.
+	 * @param items the number of items in the input.
+	 * @param contexts the number of distinct subsequences in the model afterwards.
+	 * @param nanos how long the input took to count, including any Snapshot it published.
+	 */
+	default void trained(long items, int contexts, long nanos) {}
+
+	/**
+	 * Called once the generator is finalized.
+	 * @param contexts the number of distinct subsequences in the model.
+	 * @param nanos how long finalizing took.
+	 */
+	default void finalized(int contexts, long nanos) {}
+
+	/**
+	 * Called whenever the model is packed into a CompactTrie: when it is finalized, and whenever
+	 * input added afterwards grows large enough to be compacted into it.
+	 * @param contexts the number of distinct subsequences in the model.
+	 * @param suffixes the total number of distinct suffixes over all subsequences.
+	 * @param maxSuffixes the most distinct suffixes of any one subsequence.
+	 */
+	default void compacted(int contexts, long suffixes, int maxSuffixes) {}
+
+	/**
+	 * Called after a finalized generator publishes a new Snapshot for the input it was given.
+	 * @param updatedContexts the number of subsequences whose samplers were rebuilt or added.
+	 * @param nanos how long building the Snapshot took.
+	 */
+	default void published(int updatedContexts, long nanos) {}
+
+	/**
+	 * Called by a session after each call that generates items.
+	 * @param items the number of items generated by the call.
+	 * @param nanos how long the call took.
+	 */
+	default void generated(int items, long nanos) {}
+}
@@ -0,0 +1,238 @@
+package world.info.minorcline;
+
+/**
+ * Serves text generated from finalized IntMarkovModels over HTTP, so that a model is trained or loaded
+ * once and then answers any number of requests, each taking only as long as its output.
+ * Every request gets a session of its own, seeded by the request, over the shared read-only model,
+ * so requests need no locking and the same seed always gives the same text.
+ * Requests are handled on a virtual thread each when the JVM has them, and otherwise on a pool
+ * of threads that grows with the requests in progress.
+ *
+ * Endpoints, all GET:
+ * <code>/generate?length=N&amp;seed=S&amp;model=name</code> returns N chars, or N tokens of a token model,
+ * as UTF-8 text. The seed and the model are optional; without a seed, a random one is used and
+ * returned in the X-Seed header. Without a model, the first one added is used.
+ * <code>/models</code> lists the name, kind, order and contexts of each model, one per line.
+ * <code>/stats</code> gives the number of generate requests served successfully and percentiles of their latency.
+ *
+ * The server listens on the loopback address only. Its headers and body are written separately, so
+ * unless the JVM was started with the system property <code>sun.net.httpserver.nodelay=true</code>, or the
+ * caller sets it before the first server starts, each response waits about 40 ms for the client's delayed ACK.
+ * The property applies to every HttpServer in the JVM, so the server leaves it to its caller.
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class MarkovServer {
+	/**The most symbols a single request may ask for, unless set otherwise.*/
+	public static final int DEFAULT_MAX_LENGTH = 1 << 20;
+
+	private int port;
+	private int maxLength;
+	private Map<String, Model> models;
+	/**The model used by requests that do not name one.*/
+	private volatile String defaultModel;
+	private HttpServer server;
+	private ExecutorService executor;
+	private LatencyHistogram latency;
+
+	/**
+	 * A finalized model, and the vocabulary of its tokens if it is a token model, or null.
+	 */
+	private static class Model {
+		private IntMarkovModel model;
+		private Vocabulary vocabulary;
+
+		Model(IntMarkovModel model, Vocabulary vocabulary) {
+			this.model = model;
+			this.vocabulary = vocabulary;
+		}
+	}
+
+	/**
+	 * @param port the port to listen on, or 0 for any free port.
+	 */
+	public MarkovServer(int port) {
+		this(port, DEFAULT_MAX_LENGTH);
+	}
+
+	public MarkovServer(int port, int maxLength) {
+		this.port = port;
+		this.maxLength = maxLength;
+		models = new ConcurrentHashMap<String, Model>();
+		latency = new LatencyHistogram();
+	}
+
+	/**
+	 * Adds or replaces a model, which requests then choose by name. Models may be added while serving.
+	 * @param vocabulary the vocabulary of a token model, or null for a char model.
+	 */
+	public void addModel(String name, IntMarkovModel model, Vocabulary vocabulary) {
+		models.put(name, new Model(model, vocabulary));
+		if (defaultModel == null)
+			defaultModel = name;
+	}
+
+	/**
+	 * Starts listening. Returns at once; requests are handled on other threads until <code>stop()</code>.
+	 * @throws IOException if the port cannot be bound.
+	 */
+	public void start() throws IOException {
+		if (server != null)
+			throw new IllegalStateException("The server is already started.");
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = newRequestExecutor();
+		server.setExecutor(executor);
+		server.createContext("/generate", this::handleGenerate);
+		server.createContext("/models", this::handleModels);
+		server.createContext("/stats", this::handleStats);
+		server.start();
+	}
+
+	/**
+	 * Stops listening, and waits up to a second for the requests in progress to finish.
+	 */
+	public void stop() {
+		if (server == null)
+			return;
+		server.stop(1);
+		executor.shutdown();
+		server = null;
+	}
+
+	/**
+	 * Gets the port the server listens on, which is chosen when it starts if it was given as 0.
+	 */
+	public int port() {
+		return server == null ? port : server.getAddress().getPort();
+	}
+
+	public LatencyHistogram latency() {
+		return latency;
+	}
+
+	/**
+	 * Makes an executor that runs each request on a new virtual thread, which the JVM has from Java 21.
+	 * On older JVMs, it is a pool of daemon threads that grows with the requests in progress.
+	 */
+	static ExecutorService newRequestExecutor() {
+		try {
+			Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtual.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			//absent before Java 19, and a disabled preview feature in Java 19 and 20
+		}
+		return Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "MarkovServer request");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	private void handleGenerate(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		try (exchange) {
+			if (!exchange.getRequestMethod().equals("GET")) {
+				sendText(exchange, 405, "Only GET is supported.\n");
+				return;
+			}
+			Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+			String name = query.getOrDefault("model", defaultModel);
+			Model model = name == null ? null : models.get(name);
+			if (model == null) {
+				sendText(exchange, 404, "No such model: " + name + "\n");
+				return;
+			}
+			int length;
+			long seed;
+			try {
+				length = Integer.parseInt(query.getOrDefault("length", ""));
+				seed = query.containsKey("seed") ? Long.parseLong(query.get("seed")) : ThreadLocalRandom.current().nextLong();
+			} catch (NumberFormatException e) {
+				sendText(exchange, 400, "length must be an integer, and seed a long integer.\n");
+				return;
+			}
+			if (length < 1 || length > maxLength) {
+				sendText(exchange, 400, "length must be from 1 to " + maxLength + ".\n");
+				return;
+			}
+			IntMarkovSession session = model.model.newSession(new SplittableRandom(seed));
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+			exchange.getResponseHeaders().set("X-Seed", Long.toString(seed));
+			//the length of the body is not known until it is encoded, so it is sent in chunks
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream body = exchange.getResponseBody();
+			if (model.vocabulary == null) {
+				session.generateText(length, Channels.newChannel(body), StandardCharsets.UTF_8);
+			}
+			else {
+				Writer out = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8));
+				session.generateTokens(length, model.vocabulary, out);
+				out.flush();
+			}
+			//only complete responses, before the exchange is closed and the client sees the end of the body
+			latency.record(System.nanoTime() - start);
+		}
+	}
+
+	private void handleModels(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			StringBuilder sb = new StringBuilder();
+			for (Map.Entry<String, Model> e : models.entrySet()) {
+				IntMarkovModel model = e.getValue().model;
+				sb.append(e.getKey()).append(e.getValue().vocabulary == null ? " chars" : " tokens")
+						.append(" order ").append(model.order()).append(", ").append(model.size()).append(" contexts")
+						.append(e.getKey().equals(defaultModel) ? ", default\n" : "\n");
+			}
+			sendText(exchange, 200, sb.toString());
+		}
+	}
+
+	private void handleStats(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			sendText(exchange, 200, "generate requests: " + latency + "\n");
+		}
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+	}
+
+	/**
+	 * Splits a raw query string into its decoded names and values. A name without a value maps to "".
+	 */
+	static Map<String, String> parseQuery(String query) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (query == null || query.isEmpty())
+			return parameters;
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			String name = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return parameters;
+	}
+}
@@ -0,0 +1,164 @@
+package world.info.minorcline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+
+public class MarkovServerTest {
+	private MarkovServer sut;
+	private IntMarkovModel chars;
+	private IntMarkovModel tokens;
+	private Vocabulary vocabulary;
+	private boolean pass = true;
+
+	public MarkovServerTest() throws IOException{
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		IntMarkovGenerator mg = new IntMarkovGenerator(3);
+		mg.addIterator(new String(MarkovBenchmark.syntheticCorpus(1 << 14, 5)).chars().iterator());
+		mg.finalizeGenerator();
+		chars = mg.model();
+		vocabulary = new Vocabulary();
+		IntMarkovGenerator tg = new IntMarkovGenerator(1);
+		tg.addIterator(new TokenIterator(new StringReader("the cat and the hat and the bat"), vocabulary));
+		tg.finalizeGenerator();
+		tokens = tg.model();
+		sut = new MarkovServer(0, 1000);
+		sut.addModel("chars", chars, null);
+		sut.addModel("tokens", tokens, vocabulary);
+	}
+
+	public static void main(String[] args) throws IOException{
+		MarkovServerTest test = new MarkovServerTest();
+		test.runTests();
+	}
+
+	public void runTests() throws IOException{
+		Map<String, Boolean> testResults = new HashMap<>();
+
+		sut.start();
+		try{
+			testResults.put("testSeedMatchesSession", testSeedMatchesSession());
+			testResults.put("testRandomSeedIsReturned", testRandomSeedIsReturned());
+			testResults.put("testTokenModel", testTokenModel());
+			testResults.put("testBadRequests", testBadRequests());
+			testResults.put("testModelsAndStats", testModelsAndStats());
+		} finally {
+			sut.stop();
+		}
+		testResults.put("testParseQuery", testParseQuery());
+		testResults.put("testRequestExecutor", testRequestExecutor());
+
+		for (Entry<String, Boolean> e : testResults.entrySet()){
+			if (e.getValue() == false){
+				System.out.println("Test failure: " + e.getKey());
+				pass = false;
+			}
+		}
+		if (pass)
+			System.out.println("Passed all tests.");
+	}
+
+	private HttpURLConnection get(String pathAndQuery) throws IOException{
+		return (HttpURLConnection) new URL("http://localhost:" + sut.port() + pathAndQuery).openConnection();
+	}
+
+	private static String body(HttpURLConnection connection) throws IOException{
+		InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		in.transferTo(bytes);
+		in.close();
+		return bytes.toString(StandardCharsets.UTF_8);
+	}
+
+	private static String expected(IntMarkovModel model, int length, long seed) throws IOException{
+		StringBuilder sb = new StringBuilder();
+		model.newSession(new SplittableRandom(seed)).generateText(length, sb);
+		return sb.toString();
+	}
+
+	public boolean testSeedMatchesSession(){
+		try{
+			String first = body(get("/generate?length=500&seed=42"));
+			String again = body(get("/generate?model=chars&seed=42&length=500"));
+			String other = body(get("/generate?length=500&seed=43"));
+			return first.equals(expected(chars, 500, 42)) && first.equals(again) && !first.equals(other);
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testRandomSeedIsReturned(){
+		try{
+			HttpURLConnection connection = get("/generate?length=200");
+			String text = body(connection);
+			long seed = Long.parseLong(connection.getHeaderField("X-Seed"));
+			return text.equals(expected(chars, 200, seed));
+		} catch (IOException | NumberFormatException e){
+			return false;
+		}
+	}
+
+	public boolean testTokenModel(){
+		try{
+			StringBuilder sb = new StringBuilder();
+			tokens.newSession(new SplittableRandom(7)).generateTokens(20, vocabulary, sb);
+			return body(get("/generate?model=tokens&length=20&seed=7")).equals(sb.toString());
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testBadRequests(){
+		try{
+			long served = sut.latency().count();
+			boolean rejected = get("/generate?seed=1").getResponseCode() == 400
+					&& get("/generate?length=0").getResponseCode() == 400
+					&& get("/generate?length=1001").getResponseCode() == 400
+					&& get("/generate?length=10&seed=x").getResponseCode() == 400
+					&& get("/generate?length=10&model=none").getResponseCode() == 404;
+			//only the complete response is timed
+			return rejected && body(get("/generate?length=1000")).length() == 1000 && sut.latency().count() == served + 1;
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testModelsAndStats(){
+		try{
+			String models = body(get("/models"));
+			body(get("/generate?length=10"));
+			String stats = body(get("/stats"));
+			return models.contains("chars chars order 3, " + chars.size() + " contexts, default")
+					&& models.contains("tokens tokens order 1") && stats.startsWith("generate requests: n=")
+					&& sut.latency().count() > 0;
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testParseQuery(){
+		Map<String, String> query = MarkovServer.parseQuery("length=5&model=a%20b&seed");
+		return query.get("length").equals("5") && query.get("model").equals("a b") && query.get("seed").equals("")
+				&& MarkovServer.parseQuery(null).isEmpty();
+	}
+
+	public boolean testRequestExecutor(){
+		ExecutorService executor = MarkovServer.newRequestExecutor();
+		try{
+			return executor.submit(() -> Thread.currentThread().isDaemon()).get();
+		} catch (Exception e){
+			return false;
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package world.info.minorcline;
+
+/**
+ * One stream of output from a finalized MarkovGenerator.
+ * A session owns the subsequence it generated most recently and its own source of random numbers,
+ * and only reads the generator's model. Any number of sessions can therefore generate from the
+ * same generator at once, one per thread, without locking. A single session is not thread-safe.
+ * Each item is drawn from one published Snapshot of the model, so training that goes on meanwhile
+ * is seen all at once or not at all.
+ * While the output stays within the frozen part of the model, the session keeps the node of its current
+ * subsequence and follows the successor link of each item it draws, without looking the subsequence up.
+ * Each call is timed for the generator's MarkovMetrics only if it has any, and each call that generates
+ * in bulk is reported as a JFR event.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+public class MarkovSession<T> {
+	private MarkovGenerator<T> generator;
+	private List<T> firstInputSubseq;
+	private ContextWindow<T> outputSubseq;
+	/**The frozen node of outputSubseq in linked, or -1 if it has to be looked up.*/
+	private int node;
+	/**The Snapshot in which node was found.*/
+	private MarkovGenerator.Snapshot<T> linked;
+	private RandomGenerator random;
+	/**The subsequence being replayed after a restart.*/
+	private List<T> restartSubseq;
+	/**Index of the next item of restartSubseq to replay after a restart, or order when not restarting.*/
+	private int replay;
+
+	MarkovSession(MarkovGenerator<T> generator, List<T> firstInputSubseq, RandomGenerator random) {
+		this.generator = generator;
+		this.firstInputSubseq = firstInputSubseq;
+		this.random = random;
+		outputSubseq = new ContextWindow<T>(firstInputSubseq);
+		restartSubseq = firstInputSubseq;
+		replay = firstInputSubseq.size();
+		node = -1;
+	}
+
+	/**
+	* Uses the complete Markov model to generate a random item based on the model
+	* and the previous sequence of items generated in this session.
+	* When the previous sequence has no known successor, the session restarts from the first
+	* subsequence of the input, or from a random one if the model was pruned, returning its items one by one.
+	*/
+	public T generate() {
+		MarkovMetrics metrics = generator.metrics();
+		if (metrics == MarkovMetrics.NONE)
+			return generate(generator.snapshot());
+		long start = System.nanoTime();
+		T next = generate(generator.snapshot());
+		metrics.generated(1, System.nanoTime() - start);
+		return next;
+	}
+
+	private T generate(MarkovGenerator.Snapshot<T> snapshot) {
+		T next;
+		if (replay < restartSubseq.size()) {
+			next = restartSubseq.get(replay++);
+			node = -1;
+		}
+		else {
+			if (node < 0 || !snapshot.sameNodes(linked)) {
+				node = snapshot.node(outputSubseq);
+				linked = snapshot;
+			}
+			if (node >= 0) {
+				MarkovMap.Sampler<T> m = snapshot.samplerAt(node);
+				int index = m.randomIndex(random);
+				next = m.suffix(index);
+				node = snapshot.successor(node, index);
+			}
+			else {
+				MarkovMap.Sampler<T> m = snapshot.unlinkedSampler(outputSubseq);
+				//A subsequence without a MarkovMap is the last one in the source, or was pruned, and has nothing after it.
+				if (m == null) {
+					restartSubseq = snapshot.restart(firstInputSubseq, random);
+					replay = 0;
+					next = restartSubseq.get(replay++);
+				}
+				else {
+					next = m.random(random);
+				}
+			}
+		}
+		outputSubseq.add(next);
+		return next;
+	}
+
+	/**
+	* Generates <code>length</code> items into <code>buffer</code>, starting at <code>offset</code>,
+	* all from the same Snapshot. Unlike <code>generateList()</code>, allocates nothing.
+	*/
+	public void generate(T[] buffer, int offset, int length) {
+		MarkovEvents.Generation event = MarkovEvents.generation();
+		long start = System.nanoTime();
+		MarkovGenerator.Snapshot<T> snapshot = generator.snapshot();
+		for (int i = offset; i < offset + length; i++)
+			buffer[i] = generate(snapshot);
+		generated(event, start, length);
+	}
+
+	/**
+	* Generates a random sequence of given length, which begins with the most recently
+	* generated subsequence of this session. The whole sequence comes from the same Snapshot.
+	* @param length the length of output to generate
+	*/
+	public List<T> generateList(int length) {
+		MarkovEvents.Generation event = MarkovEvents.generation();
+		long start = System.nanoTime();
+		MarkovGenerator.Snapshot<T> snapshot = generator.snapshot();
+		List<T> fullSeq = new ArrayList<T>(length);
+		for (int i = 0; i < outputSubseq.size(); i++)
+			fullSeq.add(outputSubseq.get(i));
+		int generated = 0;
+		while(fullSeq.size() < length){
+			fullSeq.add(generate(snapshot));
+			generated++;
+		}
+		generated(event, start, generated);
+		return fullSeq;
+	}
+
+	/**
+	 * Reports a call that generated <code>items</code> items to the metrics, and to JFR.
+	 */
+	private void generated(MarkovEvents.Generation event, long start, int items) {
+		MarkovMetrics metrics = generator.metrics();
+		if (metrics != MarkovMetrics.NONE)
+			metrics.generated(items, System.nanoTime() - start);
+		MarkovEvents.commit(event, items);
+	}
+}
@@ -0,0 +1,134 @@
+package world.info.minorcline;
+
+/**
+ * MarkovMetrics that keep every measurement: counters of the inputs and items trained and generated,
+ * the latest shape of the model, and a LatencyHistogram for each kind of call.
+ * Give it to a generator with <code>MarkovGenerator.setMetrics()</code> and read it from any thread;
+ * a reading taken while the generator is busy may be a few measurements behind.
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class MarkovStats implements MarkovMetrics {
+	private LongAdder inputs = new LongAdder();
+	private LongAdder itemsTrained = new LongAdder();
+	private LongAdder trainingNanos = new LongAdder();
+	private LongAdder itemsGenerated = new LongAdder();
+	private volatile int contexts;
+	private volatile long suffixes;
+	private volatile int maxSuffixes;
+	private volatile long finalizeNanos;
+	private LatencyHistogram trainingLatency = new LatencyHistogram();
+	private LatencyHistogram publishLatency = new LatencyHistogram();
+	private LatencyHistogram generationLatency = new LatencyHistogram();
+
+	public void trained(long items, int contexts, long nanos) {
+		inputs.increment();
+		itemsTrained.add(items);
+		trainingNanos.add(nanos);
+		this.contexts = contexts;
+		trainingLatency.record(nanos);
+	}
+
+	public void finalized(int contexts, long nanos) {
+		this.contexts = contexts;
+		finalizeNanos = nanos;
+	}
+
+	public void compacted(int contexts, long suffixes, int maxSuffixes) {
+		this.contexts = contexts;
+		this.suffixes = suffixes;
+		this.maxSuffixes = maxSuffixes;
+	}
+
+	public void published(int updatedContexts, long nanos) {
+		publishLatency.record(nanos);
+	}
+
+	public void generated(int items, long nanos) {
+		itemsGenerated.add(items);
+		//per item, so that single and bulk calls are measured alike
+		if (items > 0)
+			generationLatency.record(nanos / items);
+	}
+
+	public long inputs() {
+		return inputs.sum();
+	}
+
+	public long itemsTrained() {
+		return itemsTrained.sum();
+	}
+
+	public long itemsGenerated() {
+		return itemsGenerated.sum();
+	}
+
+	/**
+	 * Gets the number of distinct subsequences in the model, as of the latest input or compaction.
+	 */
+	public int contexts() {
+		return contexts;
+	}
+
+	/**
+	 * Gets the total number of distinct suffixes over all subsequences, as of the latest compaction.
+	 */
+	public long suffixes() {
+		return suffixes;
+	}
+
+	/**
+	 * Gets the most distinct suffixes of any one subsequence, as of the latest compaction.
+	 */
+	public int maxSuffixes() {
+		return maxSuffixes;
+	}
+
+	/**
+	 * Gets how long finalizing the generator took, or 0 if it has not been finalized.
+	 */
+	public long finalizeNanos() {
+		return finalizeNanos;
+	}
+
+	/**
+	 * Gets the time each input took to count.
+	 */
+	public LatencyHistogram trainingLatency() {
+		return trainingLatency;
+	}
+
+	/**
+	 * Gets the time each Snapshot published after finalizing took to build.
+	 */
+	public LatencyHistogram publishLatency() {
+		return publishLatency;
+	}
+
+	/**
+	 * Gets the time per item of each call of a session that generated any: the whole time of a call that
+	 * generated one item, and the average over the items of a call that generated many.
+	 */
+	public LatencyHistogram generationLatency() {
+		return generationLatency;
+	}
+
+	/**
+	 * Gets the number of items trained per second spent counting inputs, over all inputs.
+	 * Inputs counted on several threads at once each add their own time.
+	 */
+	public double trainingThroughput() {
+		long nanos = trainingNanos.sum();
+		return nanos <= 0 ? 0 : itemsTrained() * 1e9 / nanos;
+	}
+
+	public String toString() {
+		return "inputs: " + inputs() + ", items trained: " + itemsTrained() + ", items generated: " + itemsGenerated()
+				+ "\ncontexts: " + contexts + ", suffixes: " + suffixes + ", max suffixes: " + maxSuffixes
+				+ "\nfinalize: " + finalizeNanos + "ns"
+				+ "\ntraining: " + trainingLatency
+				+ "\npublish: " + publishLatency
+				+ "\ngeneration: " + generationLatency;
+	}
+}
@@ -0,0 +1,161 @@
+package world.info.minorcline;
+
+/**
+ * The size of a Markov model: how many contexts, nodes, edges and suffix entries it has, and about
+ * how many bytes each of its structures takes. A footprint is either measured, from a finalized model
+ * by <code>MarkovGenerator.footprint()</code> or <code>IntMarkovModel.footprint()</code>, or projected,
+ * from counts estimated before training by a FootprintEstimator.
+ *
+ * The bytes of heap objects are estimated from the usual layout of a 64-bit JVM with compressed
+ * references, which is what heaps smaller than 32 GB use: 12-byte object headers, 4-byte references,
+ * 16-byte array headers and sizes rounded up to 8 bytes. The items of a generic model are the caller's
+ * objects and are not counted. A projected footprint also gives the peak: the most heap that building
+ * the model is expected to take at once, with the training tables and the finalized model both alive.
+ */
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ModelFootprint {
+	static final int HEADER = 12;
+	static final int REFERENCE = 4;
+	static final int ARRAY_HEADER = 16;
+
+	private int order;
+	private long contexts;
+	private long nodes;
+	private long edges;
+	private long suffixes;
+	private boolean offHeap;
+	/**Estimated bytes of each structure, in the order they were added.*/
+	private Map<String, Long> structures;
+	/**Set by projections; otherwise the total.*/
+	private long peakBytes = -1;
+
+	/**
+	 * @param contexts the distinct subsequences that are followed by at least one item.
+	 * @param nodes the nodes of the structure holding the contexts.
+	 * @param edges the edges between those nodes.
+	 * @param suffixes the distinct (context, suffix) pairs.
+	 */
+	ModelFootprint(int order, long contexts, long nodes, long edges, long suffixes) {
+		this.order = order;
+		this.contexts = contexts;
+		this.nodes = nodes;
+		this.edges = edges;
+		this.suffixes = suffixes;
+		structures = new LinkedHashMap<String, Long>();
+	}
+
+	/**
+	 * Adds the bytes of a structure, or adds to them if the structure has been added before.
+	 */
+	void add(String structure, long bytes) {
+		structures.merge(structure, bytes, Long::sum);
+	}
+
+	void setPeakBytes(long peakBytes) {
+		this.peakBytes = peakBytes;
+	}
+
+	void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	/**
+	 * Estimates the bytes of an array of <code>length</code> elements of <code>elementBytes</code> each.
+	 */
+	static long array(long length, int elementBytes) {
+		return align(ARRAY_HEADER + length * elementBytes);
+	}
+
+	/**
+	 * Estimates the bytes of an object with the given bytes of fields.
+	 */
+	static long object(int fieldBytes) {
+		return align(HEADER + fieldBytes);
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	public int order() {
+		return order;
+	}
+
+	public long contexts() {
+		return contexts;
+	}
+
+	public long nodes() {
+		return nodes;
+	}
+
+	public long edges() {
+		return edges;
+	}
+
+	public long suffixes() {
+		return suffixes;
+	}
+
+	/**
+	 * Tells whether the model's tables are outside the Java heap, in an OffHeapArena or a mapped file.
+	 */
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * Gets the estimated bytes of each structure of the model, by name.
+	 */
+	public Map<String, Long> structures() {
+		return Collections.unmodifiableMap(structures);
+	}
+
+	/**
+	 * Gets the estimated bytes of the whole model.
+	 */
+	public long totalBytes() {
+		long total = 0;
+		for (long bytes : structures.values()) total += bytes;
+		return total;
+	}
+
+	/**
+	 * Gets the most bytes the model is expected to take at once while it is built, which for a projected
+	 * footprint is more than its total; for a measured one, it is the total.
+	 */
+	public long peakBytes() {
+		return peakBytes < 0 ? totalBytes() : peakBytes;
+	}
+
+	/**
+	 * Formats a number of bytes with a binary unit, such as "1.5 MB".
+	 */
+	static String formatBytes(long bytes) {
+		String[] units = {"B", "KB", "MB", "GB", "TB"};
+		double value = bytes;
+		int unit = 0;
+		while (value >= 1024 && unit < units.length - 1) {
+			value /= 1024;
+			unit++;
+		}
+		return unit == 0 ? bytes + " B" : String.format("%.1f %s", value, units[unit]);
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("order ").append(order).append(": ").append(contexts).append(" contexts, ")
+				.append(nodes).append(" nodes, ").append(edges).append(" edges, ")
+				.append(suffixes).append(" suffixes\n");
+		for (Map.Entry<String, Long> e : structures.entrySet())
+			sb.append("  ").append(e.getKey()).append(": ").append(formatBytes(e.getValue())).append('\n');
+		sb.append("  total: ").append(formatBytes(totalBytes())).append(offHeap ? " off-heap" : "");
+		if (peakBytes >= 0)
+			sb.append(", peak while building: ").append(formatBytes(peakBytes));
+		return sb.toString();
+	}
+}
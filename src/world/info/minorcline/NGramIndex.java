@@ -0,0 +1,224 @@
+package world.info.minorcline;
+
+/**
+ * Maps fixed-length subsequences (n-grams) to values, keyed by a Rabin-Karp style rolling hash.
+ * The caller keeps the current n-gram in a ring buffer and rolls its hash forward one item at a time
+ * with <code>roll()</code>, so finding the value for each successive n-gram costs one amortized lookup
+ * instead of a walk over all n items. Hash collisions are resolved by comparing the stored n-gram
+ * with the ring buffer item by item.
+ *
+ * Used by MarkovGenerator while training, alongside the Trie that holds the finished model.
+ * An NGramIndex is not thread-safe; StripedNGramIndex splits one between locks.
+ */
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+public class NGramIndex<T, V> {
+	private static final long BASE = 0x9E3779B97F4A7C15L;
+	private static final int INITIAL_CAPACITY = 1 << 8;
+
+	private int n;
+	/**BASE raised to the power n - 1; the weight of the oldest item in the hash.*/
+	private long outWeight;
+	private long[] hashes;
+	private Object[][] keys;
+	private Object[] values;
+	private int size;
+
+	/**
+	 * Creates an empty index for n-grams of length <code>n</code>.
+	 */
+	public NGramIndex(int n) {
+		this(n, INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty index for n-grams of length <code>n</code> with room for
+	 * <code>capacity</code> / 2 of them before it grows.
+	 * @param capacity the initial number of slots, a power of two.
+	 */
+	NGramIndex(int n, int capacity) {
+		this.n = n;
+		outWeight = 1;
+		for (int i = 1; i < n; i++) outWeight *= BASE;
+		hashes = new long[capacity];
+		keys = new Object[capacity][];
+		values = new Object[capacity];
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Computes the hash of the n-gram held in a ring buffer from scratch.
+	 * @param ring the n items, oldest first starting at <code>head</code>. When <code>head</code> is 0,
+	 * the ring may be longer than n, and only its first n items are used; the same goes for get() and put().
+	 * @param head the index of the oldest item in <code>ring</code>.
+	 */
+	public long hash(Object[] ring, int head) {
+		long h = 0;
+		for (int i = head; i < n; i++) h = h * BASE + itemHash(ring[i]);
+		for (int i = 0; i < head; i++) h = h * BASE + itemHash(ring[i]);
+		return h;
+	}
+
+	/**
+	 * Computes the hash of the n-gram obtained by dropping the oldest item and appending a new one.
+	 * @param hash the hash of the current n-gram.
+	 * @param out the oldest item of the current n-gram.
+	 * @param in the item appended after the current n-gram.
+	 */
+	public long roll(long hash, Object out, Object in) {
+		return (hash - itemHash(out) * outWeight) * BASE + itemHash(in);
+	}
+
+	/**
+	 * Computes the hash of the (n+1)-gram obtained by appending an item to an n-gram, as an index of
+	 * (n+1)-grams would hash it. Lets a caller hash every prefix of a sequence in one pass.
+	 * @param hash the hash of the n-gram.
+	 * @param in the item appended after the n-gram.
+	 */
+	public long extend(long hash, Object in) {
+		return hash * BASE + itemHash(in);
+	}
+
+	/**
+	 * Gets the value of the n-gram held in a ring buffer.
+	 * @param hash the hash of the n-gram, as given by <code>hash()</code> or <code>roll()</code>.
+	 * @return the value of the n-gram, or null if it is not in the index.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long hash, Object[] ring, int head) {
+		int slot = find(hash, ring, head);
+		return (V) values[slot];
+	}
+
+	/**
+	 * Sets the value of the n-gram held in a ring buffer. The n-gram is copied.
+	 * @param hash the hash of the n-gram, as given by <code>hash()</code> or <code>roll()</code>.
+	 */
+	public void put(long hash, Object[] ring, int head, V value) {
+		int slot = find(hash, ring, head);
+		if (keys[slot] == null) {
+			Object[] key = new Object[n];
+			System.arraycopy(ring, head, key, 0, n - head);
+			System.arraycopy(ring, 0, key, n - head, head);
+			hashes[slot] = hash;
+			keys[slot] = key;
+			if (++size * 2 > keys.length) {
+				values[slot] = value;
+				grow();
+				return;
+			}
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * Removes every n-gram for which <code>condition</code> holds, rebuilding the table once.
+	 * The n-grams are passed as arrays, oldest item first, which must not be modified.
+	 * @return the number of n-grams removed.
+	 */
+	@SuppressWarnings("unchecked")
+	public int removeIf(BiPredicate<Object[], V> condition) {
+		long[] oldHashes = hashes;
+		Object[][] oldKeys = keys;
+		Object[] oldValues = values;
+		hashes = new long[oldKeys.length];
+		keys = new Object[oldKeys.length][];
+		values = new Object[oldKeys.length];
+		int removed = 0;
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == null) continue;
+			if (condition.test(oldKeys[i], (V) oldValues[i])) {
+				removed++;
+				continue;
+			}
+			int slot = spread(oldHashes[i]) & mask;
+			while (keys[slot] != null) slot = (slot + 1) & mask;
+			hashes[slot] = oldHashes[i];
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+		size -= removed;
+		return removed;
+	}
+
+	/**
+	 * Passes every n-gram and its value to <code>action</code>. The n-grams are passed as arrays,
+	 * oldest item first, which must not be modified.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(BiConsumer<Object[], V> action) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null)
+				action.accept(keys[i], (V) values[i]);
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(keys, null);
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	/**
+	 * Finds the slot holding the n-gram, or the empty slot where it belongs.
+	 */
+	private int find(long hash, Object[] ring, int head) {
+		int mask = keys.length - 1;
+		int slot = spread(hash) & mask;
+		Object[] key;
+		while ((key = keys[slot]) != null) {
+			if (hashes[slot] == hash && matches(key, ring, head))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private boolean matches(Object[] key, Object[] ring, int head) {
+		for (int i = 0; i < n; i++) {
+			int r = head + i;
+			if (r >= n) r -= n;
+			if (!Objects.equals(key[i], ring[r]))
+				return false;
+		}
+		return true;
+	}
+
+	private void grow() {
+		long[] oldHashes = hashes;
+		Object[][] oldKeys = keys;
+		Object[] oldValues = values;
+		hashes = new long[oldKeys.length * 2];
+		keys = new Object[oldKeys.length * 2][];
+		values = new Object[oldKeys.length * 2];
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == null) continue;
+			int slot = spread(oldHashes[i]) & mask;
+			while (keys[slot] != null) slot = (slot + 1) & mask;
+			hashes[slot] = oldHashes[i];
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+
+	private static long itemHash(Object item) {
+		long h = Objects.hashCode(item) * 0xff51afd7ed558ccdL;
+		return h ^ (h >>> 32);
+	}
+
+	private static int spread(long h) {
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		return (int) (h ^ (h >>> 29));
+	}
+}
@@ -0,0 +1,101 @@
+package world.info.minorcline;
+
+/**
+ * Hands out tables of ints that live outside the Java heap, carved one after another from large
+ * direct buffers. A model finalized into an arena adds only a few small objects to the heap, however
+ * large it is, so the garbage collector has nothing to trace or copy for it. Tables larger than a
+ * block get a direct buffer of their own.
+ *
+ * The memory is released only when the arena and every table taken from it are no longer reachable,
+ * so an arena should hold the tables of models that live equally long, such as a single model.
+ * Each table must be smaller than 2 GB.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OffHeapArena {
+	public static final int DEFAULT_BLOCK_SIZE = 64 << 20;
+
+	private int blockSize;
+	private List<ByteBuffer> blocks;
+	/**The block tables are currently carved from.*/
+	private ByteBuffer current;
+	private long bytesAllocated;
+	private long bytesReserved;
+
+	public OffHeapArena() {
+		this(DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param blockSize the number of bytes to reserve from the operating system at a time,
+	 * a positive multiple of 8 so that every table in a block can be 8-byte aligned.
+	 * @throws IllegalArgumentException if <code>blockSize</code> is not a positive multiple of 8.
+	 */
+	public OffHeapArena(int blockSize) throws IllegalArgumentException {
+		if (blockSize <= 0 || blockSize % 8 != 0)
+			throw new IllegalArgumentException("The block size must be a positive multiple of 8, not " + blockSize + ".");
+		this.blockSize = blockSize;
+		blocks = new ArrayList<ByteBuffer>();
+	}
+
+	/**
+	 * Allocates a table of <code>count</code> ints, all 0, in the platform's native byte order.
+	 * @throws IllegalArgumentException if the table would not be smaller than 2 GB.
+	 */
+	public synchronized IntBuffer allocateInts(int count) throws IllegalArgumentException {
+		long bytes = 4L * count;
+		if (count < 0 || bytes > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Cannot allocate " + count + " ints in one table.");
+		ByteBuffer table;
+		if (bytes > blockSize / 4) {
+			table = reserve((int) bytes);
+		}
+		else {
+			//keep every table 8-byte aligned
+			int padded = (int) ((bytes + 7) & ~7L);
+			if (current == null || current.remaining() < padded)
+				current = reserve(blockSize);
+			table = current.slice(current.position(), (int) bytes);
+			current.position(current.position() + padded);
+		}
+		bytesAllocated += bytes;
+		return table.order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	/**
+	 * Copies the first <code>count</code> ints of <code>values</code> into a new table.
+	 */
+	public IntBuffer copyOf(int[] values, int count) {
+		IntBuffer table = allocateInts(count);
+		table.put(values, 0, count);
+		table.rewind();
+		return table;
+	}
+
+	/**
+	 * Gets the number of bytes in the tables allocated so far.
+	 */
+	public synchronized long bytesAllocated() {
+		return bytesAllocated;
+	}
+
+	/**
+	 * Gets the number of bytes reserved from the operating system so far, which includes the unused
+	 * end of the current block.
+	 */
+	public synchronized long bytesReserved() {
+		return bytesReserved;
+	}
+
+	private ByteBuffer reserve(int bytes) {
+		ByteBuffer block = ByteBuffer.allocateDirect(bytes);
+		blocks.add(block);
+		bytesReserved += bytes;
+		return block;
+	}
+}
@@ -0,0 +1,77 @@
+package world.info.minorcline;
+
+/**
+ * A fixed-length array of references split into pages of 4096 slots, so that a copy costs one reference
+ * per page instead of one per slot. A copy made by <code>copyOnWrite()</code> shares every page with the
+ * original, and copies a page only the first time one of its slots is set. MarkovGenerator keeps the
+ * samplers and successor links of its frozen nodes in PagedArrays, so that publishing the few nodes that
+ * training touched copies only their pages, however large the model.
+ *
+ * Only a new array, or a copy, may be set, and only until it is published; published arrays are
+ * read-only, and can be read by any number of threads at once. Different slots of a new array may be
+ * set by different threads at once.
+ */
+
+final class PagedArray {
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private final Object[][] pages;
+	private final int length;
+	/**Which pages a copy has copied and may set; null if it owns them all.*/
+	private boolean[] owned;
+
+	/**
+	 * Makes an array of <code>length</code> nulls.
+	 */
+	PagedArray(int length) {
+		this.length = length;
+		pages = new Object[(length + PAGE_MASK) >>> PAGE_BITS][];
+		for (int p = 0; p < pages.length; p++)
+			pages[p] = new Object[Math.min(PAGE_SIZE, length - (p << PAGE_BITS))];
+	}
+
+	private PagedArray(Object[][] pages, int length) {
+		this.pages = pages;
+		this.length = length;
+		owned = new boolean[pages.length];
+	}
+
+	/**
+	 * Makes a copy that shares its pages with this array until they are set.
+	 */
+	PagedArray copyOnWrite() {
+		return new PagedArray(pages.clone(), length);
+	}
+
+	Object get(int index) {
+		return pages[index >>> PAGE_BITS][index & PAGE_MASK];
+	}
+
+	void set(int index, Object value) {
+		int p = index >>> PAGE_BITS;
+		if (owned != null && !owned[p]) {
+			pages[p] = pages[p].clone();
+			owned[p] = true;
+		}
+		pages[p][index & PAGE_MASK] = value;
+	}
+
+	int length() {
+		return length;
+	}
+
+	/**
+	 * Counts the pages this copy has copied rather than shared.
+	 */
+	int copiedPages() {
+		if (owned == null)
+			return pages.length;
+		int copied = 0;
+		for (boolean o : owned)
+			if (o)
+				copied++;
+		return copied;
+	}
+}
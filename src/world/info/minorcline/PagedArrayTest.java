@@ -0,0 +1,67 @@
+package world.info.minorcline;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+public class PagedArrayTest {
+	private boolean pass = true;
+
+	public static void main(String[] args){
+		PagedArrayTest test = new PagedArrayTest();
+		test.runTests();
+	}
+
+	public void runTests(){
+		Map<String, Boolean> testResults = new HashMap<>();
+
+		testResults.put("testGetAndSet", testGetAndSet());
+		testResults.put("testCopyLeavesOriginal", testCopyLeavesOriginal());
+		testResults.put("testCopyCopiesOnlySetPages", testCopyCopiesOnlySetPages());
+
+		for (Entry<String, Boolean> e : testResults.entrySet()){
+			if (e.getValue() == false){
+				System.out.println("Test failure: " + e.getKey());
+				pass = false;
+			}
+		}
+		if (pass)
+			System.out.println("Passed all tests.");
+	}
+
+	//Not a multiple of the page size, so the last page is short.
+	public boolean testGetAndSet(){
+		PagedArray sut = new PagedArray(10000);
+		for (int i = 0; i < sut.length(); i += 3)
+			sut.set(i, i);
+		for (int i = 0; i < sut.length(); i++){
+			Object expected = i % 3 == 0 ? (Object) i : null;
+			if (expected == null ? sut.get(i) != null : !expected.equals(sut.get(i)))
+				return false;
+		}
+		return sut.length() == 10000;
+	}
+
+	public boolean testCopyLeavesOriginal(){
+		PagedArray original = new PagedArray(10000);
+		original.set(5, "a");
+		original.set(9999, "b");
+		PagedArray sut = original.copyOnWrite();
+		sut.set(5, "c");
+		sut.set(6, "d");
+		PagedArray again = sut.copyOnWrite();
+		again.set(9999, "e");
+		return "a".equals(original.get(5)) && original.get(6) == null && "b".equals(original.get(9999))
+				&& "c".equals(sut.get(5)) && "d".equals(sut.get(6)) && "b".equals(sut.get(9999))
+				&& "c".equals(again.get(5)) && "e".equals(again.get(9999));
+	}
+
+	public boolean testCopyCopiesOnlySetPages(){
+		PagedArray original = new PagedArray(1 << 20);
+		PagedArray sut = original.copyOnWrite();
+		sut.set(0, "a");
+		sut.set(1, "b");
+		sut.set(1 << 19, "c");
+		return sut.copiedPages() == 2 && original.copiedPages() == (1 << 20) / 4096;
+	}
+}
@@ -0,0 +1,212 @@
+package world.info.minorcline;
+
+/**
+ * Trains an IntMarkovGenerator on several text files at once.
+ * Each file, or each piece of a large file, is counted into its own partial model on a ForkJoinPool,
+ * and the partial models are merged pairwise, in input order, into one generator.
+ * The result holds exactly the counts that feeding the same files one after another would give.
+ * Given a Vocabulary, it trains on the IDs of the files' tokens instead of their chars. Token models
+ * are only split between files, never within one, since a piece would not start on a token boundary.
+ */
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ParallelModelBuilder {
+	/**Files larger than this many bytes are split into pieces of about this size.*/
+	public static final long DEFAULT_CHUNK_SIZE = 8L << 20;
+
+	private int order;
+	private long chunkSize;
+	private Charset charset;
+	private ForkJoinPool pool;
+	/**Null to train on chars.*/
+	private Vocabulary vocabulary;
+	private List<String> skippedFiles;
+
+	/**
+	 * Creates a builder for models of the given order, using the common ForkJoinPool
+	 * and the platform's default charset.
+	 */
+	public ParallelModelBuilder(int order) {
+		this(order, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE, Charset.defaultCharset());
+	}
+
+	public ParallelModelBuilder(int order, ForkJoinPool pool, long chunkSize, Charset charset) {
+		this.order = order;
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+		this.charset = charset;
+		skippedFiles = Collections.synchronizedList(new ArrayList<String>());
+	}
+
+	/**
+	 * Creates a builder for token models of the given order, whose tokens are interned into
+	 * <code>vocabulary</code>. Uses the common ForkJoinPool and the platform's default charset.
+	 */
+	public ParallelModelBuilder(int order, Vocabulary vocabulary) {
+		this(order);
+		this.vocabulary = vocabulary;
+	}
+
+	/**
+	 * Builds an unfinalized generator from all the given files.
+	 * Files which cannot be read in full, or which hold fewer than <code>order</code> characters or tokens,
+	 * are left out whole, even if only one of their pieces failed, and listed by <code>skippedFiles()</code>.
+	 * @return the merged generator, or null if no file provided enough data.
+	 */
+	public IntMarkovGenerator build(List<String> fileNames) {
+		skippedFiles.clear();
+		List<List<Shard>> files = new ArrayList<List<Shard>>();
+		for (String fileName : fileNames) {
+			List<Shard> shards = new ArrayList<Shard>();
+			try {
+				addShards(fileName, shards);
+				files.add(shards);
+			} catch (IOException e) {
+				skippedFiles.add(fileName);
+			}
+		}
+		if (files.isEmpty())
+			return null;
+		return pool.invoke(new BuildTask(files, 0, files.size()));
+	}
+
+	/**
+	 * Gets the files left out by the last call to <code>build()</code>.
+	 */
+	public List<String> skippedFiles() {
+		return new ArrayList<String>(skippedFiles);
+	}
+
+	private void addShards(String fileName, List<Shard> shards) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size <= chunkSize || vocabulary != null || !TextFileIterator.isSplittable(charset)) {
+				shards.add(new Shard(fileName, 0, size, true));
+				return;
+			}
+			long from = 0;
+			while (from < size) {
+				long to = TextFileIterator.alignToCharacter(channel, Math.min(from + chunkSize, size), charset);
+				shards.add(new Shard(fileName, from, to, from == 0));
+				from = to;
+			}
+		}
+	}
+
+	/**
+	 * A byte range of one file. Only the first shard of a file may be too short to train on;
+	 * the others start from the overlap they share with the shard before them.
+	 */
+	private static class Shard {
+		String fileName;
+		long from;
+		long to;
+		boolean first;
+
+		Shard(String fileName, long from, long to, boolean first) {
+			this.fileName = fileName;
+			this.from = from;
+			this.to = to;
+			this.first = first;
+		}
+	}
+
+	/**
+	 * Counts the files in [lo, hi) into one partial model, splitting the range in half
+	 * until it holds a single file. A file is counted whole or not at all.
+	 */
+	private class BuildTask extends RecursiveTask<IntMarkovGenerator> {
+		private static final long serialVersionUID = 1L;
+		private List<List<Shard>> files;
+		private int lo;
+		private int hi;
+
+		BuildTask(List<List<Shard>> files, int lo, int hi) {
+			this.files = files;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected IntMarkovGenerator compute() {
+			if (hi - lo == 1)
+				return countFile(files.get(lo));
+			int mid = (lo + hi) >>> 1;
+			BuildTask left = new BuildTask(files, lo, mid);
+			left.fork();
+			IntMarkovGenerator right = new BuildTask(files, mid, hi).compute();
+			IntMarkovGenerator merged = left.join();
+			if (merged == null)
+				return right;
+			if (right != null)
+				merged.merge(right);
+			return merged;
+		}
+
+		//The counts of a file that failed in any shard are dropped, so the model never holds part of a file.
+		private IntMarkovGenerator countFile(List<Shard> shards) {
+			IntMarkovGenerator partial = new ShardTask(shards, 0, shards.size()).compute();
+			if (partial == null)
+				skippedFiles.add(shards.get(0).fileName);
+			return partial;
+		}
+	}
+
+	/**
+	 * Counts the shards in [lo, hi) of one file into one partial model, splitting the range in half
+	 * until it holds a single shard.
+	 * @return the partial model, or null if any of the shards could not be counted.
+	 */
+	private class ShardTask extends RecursiveTask<IntMarkovGenerator> {
+		private static final long serialVersionUID = 1L;
+		private List<Shard> shards;
+		private int lo;
+		private int hi;
+
+		ShardTask(List<Shard> shards, int lo, int hi) {
+			this.shards = shards;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected IntMarkovGenerator compute() {
+			if (hi - lo == 1)
+				return countShard(shards.get(lo));
+			int mid = (lo + hi) >>> 1;
+			ShardTask left = new ShardTask(shards, lo, mid);
+			left.fork();
+			IntMarkovGenerator right = new ShardTask(shards, mid, hi).compute();
+			IntMarkovGenerator merged = left.join();
+			if (merged == null || right == null)
+				return null;
+			merged.merge(right);
+			return merged;
+		}
+
+		private IntMarkovGenerator countShard(Shard shard) {
+			IntMarkovGenerator partial = new IntMarkovGenerator(order);
+			int overlap = shard.first ? 0 : order;
+			try {
+				TextFileIterator text = new TextFileIterator(shard.fileName, shard.from, shard.to, overlap, charset);
+				if (vocabulary == null)
+					partial.addText(text);
+				else
+					partial.addIterator(new TokenIterator(text, vocabulary));
+				if (text.error() != null)
+					return null;
+			} catch (IOException | IllegalStateException e) {
+				return null;
+			}
+			return partial;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package world.info.minorcline;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelModelBuilderTest {
+	private Path large;
+	private Path small;
+	private Path tooShort;
+	private boolean pass = true;
+
+	public ParallelModelBuilderTest() throws IOException{
+		large = Files.createTempFile("ParallelModelBuilderTest", ".txt");
+		large.toFile().deleteOnExit();
+		Files.write(large, new String(MarkovBenchmark.syntheticCorpus(1 << 15, 4)).getBytes(StandardCharsets.UTF_8));
+		small = Files.createTempFile("ParallelModelBuilderTest", ".txt");
+		small.toFile().deleteOnExit();
+		Files.write(small, "na\u00efve caf\u00e9, well-known caf\u00e9".getBytes(StandardCharsets.UTF_8));
+		tooShort = Files.createTempFile("ParallelModelBuilderTest", ".txt");
+		tooShort.toFile().deleteOnExit();
+		Files.write(tooShort, "ab".getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static void main(String[] args) throws IOException{
+		ParallelModelBuilderTest test = new ParallelModelBuilderTest();
+		test.runTests();
+	}
+
+	public void runTests(){
+		Map<String, Boolean> testResults = new HashMap<>();
+
+		testResults.put("testMatchesSequential", testMatchesSequential());
+		testResults.put("testSkippedFilesListedOnce", testSkippedFilesListedOnce());
+
+		for (Entry<String, Boolean> e : testResults.entrySet()){
+			if (e.getValue() == false){
+				System.out.println("Test failure: " + e.getKey());
+				pass = false;
+			}
+		}
+		if (pass)
+			System.out.println("Passed all tests.");
+	}
+
+	private static int[] output(IntMarkovGenerator generator){
+		generator.finalizeGenerator();
+		int[] out = new int[3000];
+		generator.newSession(new SplittableRandom(6)).generate(out, 0, out.length);
+		return out;
+	}
+
+	//The large file is split into pieces of about 1000 bytes, but the model is that of reading the files in turn.
+	public boolean testMatchesSequential(){
+		try{
+			IntMarkovGenerator expected = new IntMarkovGenerator(4);
+			expected.addText(new TextFileIterator(large.toString(), StandardCharsets.UTF_8));
+			expected.addText(new TextFileIterator(small.toString(), StandardCharsets.UTF_8));
+			ParallelModelBuilder sut = new ParallelModelBuilder(4, new ForkJoinPool(2), 1000, StandardCharsets.UTF_8);
+			IntMarkovGenerator built = sut.build(List.of(large.toString(), small.toString()));
+			return built.size() == expected.size() && Arrays.equals(output(built), output(expected))
+					&& sut.skippedFiles().isEmpty();
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testSkippedFilesListedOnce(){
+		String missing = large.toString() + ".missing";
+		ParallelModelBuilder sut = new ParallelModelBuilder(4, new ForkJoinPool(2), 1000, StandardCharsets.UTF_8);
+		IntMarkovGenerator built = sut.build(List.of(tooShort.toString(), missing, small.toString()));
+		return built != null && new HashSet<String>(sut.skippedFiles()).equals(Set.of(tooShort.toString(), missing))
+				&& sut.skippedFiles().size() == 2;
+	}
+}
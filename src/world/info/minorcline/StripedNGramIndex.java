@@ -0,0 +1,89 @@
+package world.info.minorcline;
+
+/**
+ * An NGramIndex split into stripes by hash, so that many threads can use it at once.
+ * Each n-gram belongs to exactly one stripe, chosen from its hash, and a thread holds the monitor of a
+ * stripe while it reads or changes anything in it, including the values of the n-grams there.
+ * Threads working on n-grams of different stripes never wait for each other, and each stripe grows
+ * on its own, so a growing table does not stop the others.
+ *
+ * The methods that cover every stripe, such as <code>size()</code> and <code>forEach()</code>, lock each
+ * stripe in turn; they see a consistent model only when no other thread is changing it.
+ */
+
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+public class StripedNGramIndex<T, V> {
+	/**Number of stripes; a power of two, enough for many threads to rarely meet on one.*/
+	private static final int STRIPES = 64;
+	private static final int STRIPE_CAPACITY = 1 << 4;
+
+	private NGramIndex<T, V>[] stripes;
+
+	/**
+	 * Creates an empty index for n-grams of length <code>n</code>.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public StripedNGramIndex(int n) {
+		stripes = new NGramIndex[STRIPES];
+		for (int i = 0; i < STRIPES; i++) stripes[i] = new NGramIndex<T, V>(n, STRIPE_CAPACITY);
+	}
+
+	/**
+	 * Gets the stripe that holds the n-gram with the given hash. The caller synchronizes on the stripe
+	 * for as long as it uses the stripe or the value of the n-gram.
+	 */
+	public NGramIndex<T, V> stripe(long hash) {
+		//the top bits, since each stripe places n-grams by the low bits of their spread hash
+		return stripes[(int) ((hash * 0x9E3779B97F4A7C15L) >>> 58)];
+	}
+
+	/**
+	 * @see NGramIndex#hash(Object[], int)
+	 */
+	public long hash(Object[] ring, int head) {
+		return stripes[0].hash(ring, head);
+	}
+
+	/**
+	 * @see NGramIndex#roll(long, Object, Object)
+	 */
+	public long roll(long hash, Object out, Object in) {
+		return stripes[0].roll(hash, out, in);
+	}
+
+	public int size() {
+		int size = 0;
+		for (NGramIndex<T, V> stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @see NGramIndex#removeIf(BiPredicate)
+	 */
+	public int removeIf(BiPredicate<Object[], V> condition) {
+		int removed = 0;
+		for (NGramIndex<T, V> stripe : stripes) {
+			synchronized (stripe) {
+				removed += stripe.removeIf(condition);
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @see NGramIndex#forEach(BiConsumer)
+	 */
+	public void forEach(BiConsumer<Object[], V> action) {
+		for (NGramIndex<T, V> stripe : stripes) {
+			synchronized (stripe) {
+				stripe.forEach(action);
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package world.info.minorcline;
+
+/**
+ * Interns items of any type into dense integer IDs, so that an EncodedMarkovGenerator can train and generate
+ * on ints, and only compare items for equality once, when each is first looked up.
+ * IDs are handed out in the order items are first seen, starting from 0. Vocabulary is the dictionary
+ * of the tokens of text. Items must not be null, and must not change their equality once interned.
+ * One dictionary may be shared by generators on many threads at once: looking up a known item
+ * takes no lock, and only adding a new item does.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SymbolDictionary<T> {
+	private ConcurrentHashMap<T, Integer> ids;
+	/**symbols[id] is the item with that ID. Only written while holding the lock, and replaced when grown,
+	 * so a reader that has seen an ID also sees its item.*/
+	private volatile Object[] symbols;
+	/**Only written while holding the lock.*/
+	private volatile int size;
+
+	public SymbolDictionary() {
+		ids = new ConcurrentHashMap<T, Integer>();
+		symbols = new Object[1024];
+		size = 0;
+	}
+
+	/**
+	 * Gets the ID of <code>item</code>, giving it the next free ID if it has none yet.
+	 */
+	public int id(T item) {
+		Integer id = ids.get(item);
+		if (id != null)
+			return id;
+		return add(item);
+	}
+
+	/**
+	 * Gets the ID of <code>item</code> without adding it.
+	 * @return the ID, or -1 if the item is not in the dictionary.
+	 */
+	public int find(T item) {
+		Integer id = ids.get(item);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Gets the item with the given ID, which must have been handed out by <code>id()</code>.
+	 * Takes no lock, since it is called for every generated item.
+	 * @throws IndexOutOfBoundsException if no item has that ID.
+	 */
+	@SuppressWarnings("unchecked")
+	public T symbol(int id) throws IndexOutOfBoundsException {
+		Object[] s = symbols;
+		Object item = id >= 0 && id < s.length ? s[id] : null;
+		if (item == null)
+			throw new IndexOutOfBoundsException("No item has ID " + id + ".");
+		return (T) item;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private synchronized int add(T item) {
+		Integer id = ids.get(item);
+		if (id != null)
+			return id;
+		Object[] s = symbols;
+		if (size == s.length)
+			s = Arrays.copyOf(s, size * 2);
+		s[size] = item;
+		//publishes the item before its ID can be seen through ids or size
+		symbols = s;
+		ids.put(item, size);
+		return size++;
+	}
+}
@@ -1,54 +1,266 @@
 package world.info.minorcline;
 
 /**
-* Iterator that wraps a FileReader to read text from a file
-* one char at a time. Uses a buffer that holds one character
-* to detect the end of the file and IO exceptions.
-* IO exceptions are surpressed. Instead, the iterator stops producing output.
+* Iterator that reads text from a file one char at a time.
+* The file is memory-mapped a window at a time and decoded in large blocks by an explicit
+* charset decoder, so reading a char is usually just a buffer access.
+* Besides the Iterator contract, the chars can be read unboxed with <code>nextChar()</code>
+* or <code>chars()</code>, or in bulk with <code>read()</code> or through <code>reader()</code>.
+* Malformed input is replaced rather than reported.
+* IO exceptions are surpressed. Instead, the iterator stops producing output, and <code>error()</code> tells why.
 * @author M. Cline August 2014
+*
+* October 2026 - Rewritten to use a memory-mapped FileChannel instead of an unbuffered FileReader.
+* The first char of the file is no longer skipped.
 */
 
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
+import java.util.PrimitiveIterator;
 
 public class TextFileIterator implements Iterator<Character>{
+	/**Number of bytes of the file mapped at a time.*/
+	private static final long WINDOW_SIZE = 64L << 20;
+	/**Number of chars decoded at a time.*/
+	private static final int BUFFER_SIZE = 1 << 14;
+
 	private String fileName;
-	private FileReader reader;
-	private int buff;
+	private FileChannel channel;
+	private CharsetDecoder decoder;
+	/**The mapped part of the file, starting at windowStart.*/
+	private MappedByteBuffer window;
+	private long windowStart;
+	/**The file position after the last byte to read.*/
+	private long end;
+	private CharBuffer chars;
+	private boolean eof;
+	/**The exception which ended reading early, or null.*/
+	private IOException error;
 
-	
+	/**
+	 * Opens a file to be read in the platform's default charset.
+	 */
 	public TextFileIterator(String fileName) throws IOException{
-		reader = new FileReader(fileName);
-		buff = reader.read();
+		this(fileName, Charset.defaultCharset());
+	}
+
+	/**
+	 * Opens a file to be read in the given charset.
+	 */
+	public TextFileIterator(String fileName, Charset charset) throws IOException{
+		this(fileName, 0, -1, 0, charset);
+	}
+
+	/**
+	 * Opens the part of a file whose chars start in the byte range [from, to), preceded by the
+	 * <code>overlap</code> chars before <code>from</code>. Used to train on pieces of a large file
+	 * at once, so that subsequences which straddle <code>from</code> are still seen.
+	 * Both <code>from</code> and <code>to</code> must be char boundaries, as given by
+	 * <code>alignToCharacter()</code>.
+	 * @param to the end of the range, or -1 for the end of the file.
+	 */
+	TextFileIterator(String fileName, long from, long to, int overlap, Charset charset) throws IOException{
+		this.fileName = fileName;
+		channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		end = (to < 0) ? channel.size() : to;
+		chars = CharBuffer.allocate(BUFFER_SIZE);
+		chars.flip();
+		eof = false;
+
+		long start = from;
+		int skip = 0;
+		if (overlap > 0 && from > 0) {
+			boolean utf8 = isUtf8(charset);
+			long backFrom = Math.max(0, from - (utf8 ? overlap * 4L : overlap));
+			ByteBuffer before = read(channel, backFrom, from);
+			int found = 0;
+			int i = before.limit();
+			while (found < overlap && i > 0) {
+				i--;
+				int b = before.get(i) & 0xff;
+				//a four-byte UTF-8 sequence decodes to a surrogate pair
+				if (!utf8 || (b & 0xc0) != 0x80)
+					found += (utf8 && b >= 0xf0) ? 2 : 1;
+			}
+			start = backFrom + i;
+			skip = Math.max(0, found - overlap);
+		}
+		map(start);
+		for (int i = 0; i < skip && hasNext(); i++)
+			chars.get();
+	}
+
+	public Character next(){
+		if (!hasNext()) return null;
+		return chars.get();
+	}
+
+	/**
+	 * Reads the next character without boxing it.
+	 * Returns -1 at the end of the file.
+	 */
+	public int nextChar(){
+		if (!hasNext()) return -1;
+		return chars.get();
+	}
+
+	/**
+	 * Reads up to <code>length</code> chars into <code>buffer</code>, starting at <code>offset</code>.
+	 * @return the number of chars read, or -1 at the end of the file.
+	 */
+	public int read(char[] buffer, int offset, int length){
+		if (!hasNext()) return -1;
+		int n = Math.min(length, chars.remaining());
+		chars.get(buffer, offset, n);
+		return n;
+	}
+
+	/**
+	 * A view of the remaining characters of the file as primitive ints,
+	 * for consumers such as IntMarkovGenerator that should not box each character.
+	 */
+	public PrimitiveIterator.OfInt chars(){
+		return new PrimitiveIterator.OfInt(){
+			public boolean hasNext(){
+				return TextFileIterator.this.hasNext();
+			}
+
+			public int nextInt(){
+				return nextChar();
+			}
+		};
+	}
+
+	/**
+	 * A view of the remaining characters of the file as a Reader, for consumers that read chars
+	 * in bulk from any source, such as TokenIterator. Closing the Reader closes this iterator.
+	 */
+	public Reader reader(){
+		return new Reader(){
+			public int read(char[] buffer, int offset, int length){
+				return TextFileIterator.this.read(buffer, offset, length);
+			}
+
+			public void close(){
+				TextFileIterator.this.close();
+			}
+		};
+	}
+
+	public boolean hasNext(){
+		if (chars.hasRemaining()) return true;
+		if (!eof) fill();
+		return chars.hasRemaining();
+	}
+
+	/**
+	 * Releases the file. The iterator stops producing output.
+	 */
+	public void close(){
+		eof = true;
+		chars.position(chars.limit());
+		window = null;
 		try{
-			buff = reader.read();
+			channel.close();
 		} catch (IOException i){
-			buff = -1;
 		}
 	}
 
-	public Character next(){
-		Character r = null;
-		if (buff != -1) {
-			r = (char)(buff);
+	public String fileName(){
+		return fileName;
+	}
+
+	/**
+	 * Gets the exception which ended reading the file early, or null if there was none.
+	 */
+	public IOException error(){
+		return error;
+	}
+
+	/**
+	 * Decodes the next block of chars, mapping the next window of the file when the current one
+	 * runs out. A char split across two windows is decoded from the start of the second.
+	 */
+	private void fill(){
+		chars.clear();
+		try{
+			while (chars.position() == 0 && !eof) {
+				boolean last = windowStart + window.limit() == end;
+				//overflow leaves the rest of the window for the next block
+				if (decoder.decode(window, chars, last).isOverflow())
+					break;
+				if (last) {
+					decoder.flush(chars);
+					eof = true;
+					window = null;
+					channel.close();
+				}
+				else {
+					map(windowStart + window.position());
+				}
+			}
+		} catch (IOException i){
+			//the chars decoded before the failure are still returned, but the file is released
+			error = i;
+			eof = true;
+			window = null;
 			try{
-				buff = reader.read();
-			} catch (IOException i){
-				buff = -1;
+				channel.close();
+			} catch (IOException c){
 			}
 		}
-		return r;
+		chars.flip();
 	}
-	
-	public boolean hasNext(){
-		if (buff == -1) return false;
-		else return true;
+
+	private void map(long position) throws IOException{
+		windowStart = position;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, end - position));
 	}
-	
-	
-	public String fileName(){ 
-		return fileName;
+
+	/**
+	 * Whether a file in the given charset can be split into byte ranges at char boundaries.
+	 */
+	static boolean isSplittable(Charset charset) {
+		return isUtf8(charset) || charset.newEncoder().maxBytesPerChar() == 1.0f;
+	}
+
+	/**
+	 * Moves a byte position forward to the start of the char it falls in.
+	 */
+	static long alignToCharacter(FileChannel channel, long position, Charset charset) throws IOException {
+		if (!isUtf8(charset) || position <= 0 || position >= channel.size())
+			return position;
+		ByteBuffer ahead = read(channel, position, Math.min(position + 4, channel.size()));
+		int i = 0;
+		while (i < ahead.limit() && (ahead.get(i) & 0xc0) == 0x80) i++;
+		return position + i;
+	}
+
+	private static boolean isUtf8(Charset charset) {
+		return charset.equals(StandardCharsets.UTF_8);
+	}
+
+	private static ByteBuffer read(FileChannel channel, long from, long to) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, from + buffer.position()) < 0)
+				break;
+		}
+		buffer.flip();
+		return buffer;
 	}
-	
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+package world.info.minorcline;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+public class TextFileIteratorTest {
+	private static final String TEXT = "Gr\u00fc\u00dfe, na\u00efve caf\u00e9 \ud83d\udc3b!";
+	private Path file;
+	private boolean pass = true;
+
+	public TextFileIteratorTest() throws IOException{
+		file = Files.createTempFile("TextFileIteratorTest", ".txt");
+		file.toFile().deleteOnExit();
+		Files.write(file, TEXT.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static void main(String[] args) throws IOException{
+		TextFileIteratorTest test = new TextFileIteratorTest();
+		test.runTests();
+	}
+
+	public void runTests(){
+		Map<String, Boolean> testResults = new HashMap<>();
+
+		testResults.put("testNextReadsWholeFile", testNextReadsWholeFile());
+		testResults.put("testBulkReadsWholeFile", testBulkReadsWholeFile());
+		testResults.put("testNextCharAtEnd", testNextCharAtEnd());
+		testResults.put("testRangeWithOverlap", testRangeWithOverlap());
+		testResults.put("testEmptyFile", testEmptyFile());
+
+		for (Entry<String, Boolean> e : testResults.entrySet()){
+			if (e.getValue() == false){
+				System.out.println("Test failure: " + e.getKey());
+				pass = false;
+			}
+		}
+		if (pass)
+			System.out.println("Passed all tests.");
+	}
+
+	public boolean testNextReadsWholeFile(){
+		try{
+			TextFileIterator sut = new TextFileIterator(file.toString(), StandardCharsets.UTF_8);
+			StringBuilder sb = new StringBuilder();
+			while (sut.hasNext())
+				sb.append(sut.next());
+			return TEXT.equals(sb.toString());
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testBulkReadsWholeFile(){
+		try{
+			TextFileIterator sut = new TextFileIterator(file.toString(), StandardCharsets.UTF_8);
+			StringBuilder sb = new StringBuilder();
+			char[] buffer = new char[3];
+			int n;
+			while ((n = sut.read(buffer, 0, buffer.length)) > 0)
+				sb.append(buffer, 0, n);
+			return TEXT.equals(sb.toString());
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testNextCharAtEnd(){
+		try{
+			TextFileIterator sut = new TextFileIterator(file.toString(), StandardCharsets.UTF_8);
+			while (sut.hasNext())
+				sut.nextChar();
+			return sut.nextChar() == -1 && sut.next() == null;
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	//"caf\u00e9" takes bytes 16 to 20; the three chars before it are "ve ".
+	public boolean testRangeWithOverlap(){
+		try{
+			TextFileIterator sut = new TextFileIterator(file.toString(), 16, 21, 3, StandardCharsets.UTF_8);
+			StringBuilder sb = new StringBuilder();
+			while (sut.hasNext())
+				sb.append(sut.next());
+			return "ve caf\u00e9".equals(sb.toString());
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testEmptyFile(){
+		try{
+			Path empty = Files.createTempFile("TextFileIteratorTest", ".txt");
+			empty.toFile().deleteOnExit();
+			TextFileIterator sut = new TextFileIterator(empty.toString(), StandardCharsets.UTF_8);
+			return !sut.hasNext();
+		} catch (IOException e){
+			return false;
+		}
+	}
+}
@@ -1,79 +1,218 @@
 package world.info.minorcline;
 
 /**
-* UI for MarkovGenerator, using TextFileIterator, to make a text-based Markov chain.
-* Does not read text files into memory, but the MarkovMaps may take up a lot of memory
-* and take a while to construct if lengthy files are used. May need to increase heap size for large files.
+* UI for IntMarkovGenerator, using TextPipeline, to make a text-based Markov chain.
+* Does not read text files into memory, but the model may take up a lot of memory
+* and take a while to construct if lengthy files are used; run with -estimate to see how much first.
 * @author M. Cline August 2014
 * 
 * November 2018 - Refactored
+* 
+* October 2026 - Uses the char-specialized IntMarkovGenerator, so characters are no longer boxed.
+* Run with -parallel to train on all files, and on pieces of large files, at the same time.
+* Run with -save <file> to keep the trained model, and with -load <file> to generate from a saved
+* model without training again.
+* Run with -words to model words, spaces and punctuation as tokens instead of single characters;
+* a low order such as 2 or 3 then reads well. A saved token model keeps its vocabulary in <file>.vocab.
+* Run with -offheap to keep the finalized model outside the Java heap.
+* Each file is read and decoded by a TextPipeline on threads of its own while the model is being built.
+* Run with -estimate to sample the files before choosing the order, and see the contexts and heap
+* projected for each order next to the maximum heap, and the footprint of the model once it is built.
+* Run with -serve <port> to keep the model, trained or loaded once, and serve generated text over HTTP
+* at http://localhost:<port>/generate?length=N&seed=S instead of printing it; see MarkovServer.
 */
 
 import java.util.Scanner;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 public class TextGeneratorCLI{
 	private Scanner user = new Scanner(System.in);
 	private int modelOrder;
 	private int outputLength;
 	private List<String> fileNames;
-	private List<TextFileIterator> fileIterators;
-	private MarkovGenerator<Character> mg;
+	private List<TextPipeline> filePipelines;
+	private IntMarkovGenerator mg;
+	private boolean parallel;
+	private boolean offHeap;
+	/**Set when modelling tokens rather than characters.*/
+	private Vocabulary vocabulary;
+	private String saveFile;
+	private String loadFile;
+	private boolean estimate;
+	/**The port to serve the model on, or -1 to print one output.*/
+	private int servePort = -1;
+	/**The share of the input sampled by -estimate.*/
+	private static final double ESTIMATE_FRACTION = 0.05;
 	
 	public void run() {
-		queryUserForInput();
-		buildMarkovGenerator();
-		for (int i = 0; i < outputLength; i++) {
-			System.out.print(mg.generate());
+		if (loadFile != null) {
+			loadMarkovGenerator();
+			if (servePort < 0)
+				getOutputLengthFromUser();
+		}
+		else {
+			queryUserForInput();
+			buildMarkovGenerator();
+			if (saveFile != null)
+				saveMarkovGenerator();
+		}
+		if (servePort >= 0) {
+			serveMarkovGenerator();
+			return;
+		}
+		//Generated text is written a chunk at a time rather than printed one symbol at a time.
+		Writer out = new OutputStreamWriter(System.out);
+		IntMarkovSession session = mg.newSession(new SplittableRandom());
+		try{
+			if (vocabulary == null)
+				session.generateText(outputLength, out);
+			else
+				session.generateTokens(outputLength, vocabulary, out);
+			out.flush();
+		} catch (IOException e) {
+			System.out.println("Could not write output: " + e.getMessage());
 		}
-		
 	}
 	
 	private void queryUserForInput() {
 		getFileNamesFromUser();
-		makeIterators();
+		if (!parallel)
+			makeIterators();
+		if (estimate)
+			printFootprintEstimate();
 		getModelOrderFromUser();
-		getOutputLengthFromUser();
+		if (servePort < 0)
+			getOutputLengthFromUser();
 	}
 	
 	private void buildMarkovGenerator() {
-		mg = new MarkovGenerator<>(modelOrder);
-		for (TextFileIterator tfi : fileIterators) {
+		if (parallel) {
+			buildMarkovGeneratorInParallel();
+			return;
+		}
+		mg = new IntMarkovGenerator(modelOrder);
+		for (TextPipeline pipeline : filePipelines) {
 			try{
-				mg.addIterator(tfi);
+				mg.addText(pipeline);
+				if (pipeline.error() != null)
+					System.out.println("Could not read all of " + pipeline.fileName() + ": " + pipeline.error().getMessage());
 			} catch (IllegalStateException e) {
-				System.out.println("Not enough information in " + tfi.fileName() + 
+				pipeline.close();
+				System.out.println("Not enough information in " + pipeline.fileName() + 
 						".\nContinue and skip this file? (Y or N)? ");
 				if (!user.nextLine().trim().equalsIgnoreCase("Y"))
 					System.exit(0);
 			}
 		}
+		finalizeMarkovGenerator();
+	}
+	
+	//Trains on all files at once. Files that cannot be used are only reported afterwards.
+	private void buildMarkovGeneratorInParallel() {
+		ParallelModelBuilder builder = vocabulary == null ? new ParallelModelBuilder(modelOrder)
+				: new ParallelModelBuilder(modelOrder, vocabulary);
+		mg = builder.build(fileNames);
+		for (String f : builder.skippedFiles()) {
+			System.out.println("Invalid file or not enough information in " + f + 
+					".\nContinue without this file? (Y or N)? ");
+			if (!user.nextLine().trim().equalsIgnoreCase("Y"))
+				System.exit(0);
+		}
+		if (mg == null) {
+			System.out.println("No valid files provided. Exiting.");
+			System.exit(0);
+		}
+		finalizeMarkovGenerator();
+	}
+	
+	private void finalizeMarkovGenerator() {
 		try{
-			mg.finalizeGenerator();
+			mg.finalizeGenerator(offHeap ? new OffHeapArena() : null);
 		} catch (IllegalStateException e) {
 			System.out.println("Not enough information available in input files.");
 			System.exit(1);
 		}
+		if (estimate)
+			System.out.println(mg.model().footprint());
 	}
 	
-	//Takes the user-given list of file names and tries to make a list of TextFileIterators with them.
+	//Samples the input files and prints the contexts and heap projected for each order.
+	private void printFootprintEstimate() {
+		try{
+			FootprintEstimator estimator = FootprintEstimator.sample(fileNames, Charset.defaultCharset(),
+					vocabulary != null, ESTIMATE_FRACTION, 20);
+			System.out.print(estimator.report());
+			System.out.println("Maximum heap: " + ModelFootprint.formatBytes(Runtime.getRuntime().maxMemory())
+					+ " (set with -Xmx). This program uses the int peak.");
+		} catch (IOException e) {
+			System.out.println("Could not sample the input files: " + e.getMessage());
+		}
+	}
+	
+	//Serves the model until the process is stopped. The server's own thread keeps the JVM running.
+	private void serveMarkovGenerator() {
+		//MarkovServer writes headers and body separately, so without this each response waits for a delayed ACK
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		MarkovServer server = new MarkovServer(servePort);
+		server.addModel("default", mg.model(), vocabulary);
+		try{
+			server.start();
+			System.out.println("Serving " + mg.model().size() + " contexts at http://localhost:" + server.port()
+					+ "/generate?length=N&seed=S");
+		} catch (IOException e) {
+			System.out.println("Could not serve on port " + servePort + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+	
+	private void loadMarkovGenerator() {
+		try{
+			mg = IntMarkovGenerator.load(Paths.get(loadFile));
+			Path vocabularyFile = Paths.get(loadFile + ".vocab");
+			if (Files.exists(vocabularyFile))
+				vocabulary = Vocabulary.load(vocabularyFile);
+		} catch (IOException e) {
+			System.out.println("Could not load model from " + loadFile + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+	
+	private void saveMarkovGenerator() {
+		try{
+			mg.save(Paths.get(saveFile));
+			if (vocabulary != null)
+				vocabulary.save(Paths.get(saveFile + ".vocab"));
+		} catch (IOException e) {
+			System.out.println("Could not save model to " + saveFile + ": " + e.getMessage());
+		}
+	}
+	
+	//Takes the user-given list of file names and tries to make a list of TextPipelines with them.
 	//Prints message when a file name is invalid.
 	//Returns the desired list. Empty if no valid file names given.
 	private void makeIterators(){
-		fileIterators = new ArrayList<TextFileIterator>();
+		filePipelines = new ArrayList<TextPipeline>();
 		for (String f : fileNames){
 			try{
-				TextFileIterator itr = new TextFileIterator(f);
-				fileIterators.add(itr);
+				TextPipeline pipeline = new TextPipeline(f, Charset.defaultCharset(), vocabulary);
+				filePipelines.add(pipeline);
 			} catch (IOException e){
 				System.out.print("Invalid file: " + f + ". Continue and skip this file? (Y or N)? ");
 				if (!user.nextLine().trim().equalsIgnoreCase("Y"))
 					System.exit(0);
 			}
 		}
-		if (fileIterators.isEmpty()) {
+		if (filePipelines.isEmpty()) {
 			System.out.println("No valid files provided. Exiting.");
 			System.exit(0);
 		}
@@ -115,7 +254,7 @@ public class TextGeneratorCLI{
 		outputLength = 0;
 		boolean loop = false;
 		do{
-			System.out.print("Enter output length in characters: ");
+			System.out.print(vocabulary == null ? "Enter output length in characters: " : "Enter output length in tokens: ");
 			try{
 				outputLength = user.nextInt();
 			} catch (Exception e){
@@ -130,6 +269,31 @@ public class TextGeneratorCLI{
 	
 	public static void main(String[] args){
 		TextGeneratorCLI app = new TextGeneratorCLI();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-parallel"))
+				app.parallel = true;
+			else if (args[i].equals("-offheap"))
+				app.offHeap = true;
+			else if (args[i].equals("-estimate"))
+				app.estimate = true;
+			else if (args[i].equals("-words"))
+				app.vocabulary = new Vocabulary();
+			else if (args[i].equals("-save") && i + 1 < args.length)
+				app.saveFile = args[++i];
+			else if (args[i].equals("-load") && i + 1 < args.length)
+				app.loadFile = args[++i];
+			else if (args[i].equals("-serve") && i + 1 < args.length) {
+				try{
+					app.servePort = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e){
+					app.servePort = -1;
+				}
+				if (app.servePort < 0 || app.servePort > 65535){
+					System.out.println("-serve needs a port from 0 to 65535, not " + args[i] + ".");
+					return;
+				}
+			}
+		}
 		app.run();
 	}
 		
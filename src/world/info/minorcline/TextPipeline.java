@@ -0,0 +1,347 @@
+package world.info.minorcline;
+
+/**
+ * Reads a text file as a stream of symbols, either its chars or, given a Vocabulary, the IDs of its tokens,
+ * in three stages that run at the same time: a reader thread reads the file's bytes, a decoder thread
+ * decodes them into chars and tokenizes them, and the thread that consumes the symbols, usually by
+ * counting them with <code>IntMarkovGenerator.addText()</code>, never waits on the disk or the decoder
+ * unless they fall behind it.
+ *
+ * The stages hand each other whole chunks through bounded queues. Each stage owns a fixed number of
+ * chunks, which are handed back once they have been used, so a stage that gets ahead waits for the next
+ * one instead of buffering the file, and nothing is allocated per chunk once the pipeline is running.
+ * The threads are started by the first read, so opening many pipelines ahead of time costs only
+ * their open files.
+ *
+ * Malformed input is replaced rather than reported. As with TextFileIterator, an IO exception ends
+ * the stream early instead of being thrown, as does any other failure of the decoder thread;
+ * <code>error()</code> tells whether that happened.
+ * A pipeline is read by one thread.
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class TextPipeline implements PrimitiveIterator.OfInt {
+	/**Number of bytes read from the file at a time.*/
+	private static final int BYTE_CHUNK_SIZE = 1 << 20;
+	/**Number of symbols handed to the consumer at a time.*/
+	private static final int SYMBOL_CHUNK_SIZE = 1 << 16;
+	/**Number of chunks owned by each of the first two stages.*/
+	private static final int CHUNKS = 4;
+	/**Marks the end of the bytes, and of the symbols.*/
+	private static final ByteBuffer END_OF_BYTES = ByteBuffer.allocate(0);
+	private static final Chunk END_OF_SYMBOLS = new Chunk(0);
+
+	private String fileName;
+	private FileChannel channel;
+	private Charset charset;
+	/**Null to read chars.*/
+	private Vocabulary vocabulary;
+	private int byteChunkSize;
+	private int symbolChunkSize;
+
+	/**Byte chunks waiting to be filled by the reader, and filled ones waiting for the decoder.*/
+	private BlockingQueue<ByteBuffer> emptyBytes;
+	private BlockingQueue<ByteBuffer> fullBytes;
+	/**Symbol chunks waiting to be filled by the decoder, and filled ones waiting for the consumer.*/
+	private BlockingQueue<Chunk> emptySymbols;
+	private BlockingQueue<Chunk> fullSymbols;
+	private Thread reader;
+	private Thread decoder;
+	private volatile IOException error;
+	private volatile boolean closed;
+
+	/**The chunk being consumed, or null before the first read.*/
+	private Chunk current;
+	private int position;
+	private boolean eof;
+
+	/**
+	 * Opens a file whose chars are to be read in the given charset.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public TextPipeline(String fileName, Charset charset) throws IOException {
+		this(fileName, charset, null);
+	}
+
+	/**
+	 * Opens a file whose tokens are to be read in the given charset, as the IDs given to them by
+	 * <code>vocabulary</code>, which the decoder thread adds new tokens to.
+	 * @param vocabulary the vocabulary of the tokens, or null to read chars.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public TextPipeline(String fileName, Charset charset, Vocabulary vocabulary) throws IOException {
+		this(fileName, charset, vocabulary, BYTE_CHUNK_SIZE, SYMBOL_CHUNK_SIZE);
+	}
+
+	TextPipeline(String fileName, Charset charset, Vocabulary vocabulary, int byteChunkSize, int symbolChunkSize)
+			throws IOException {
+		this.fileName = fileName;
+		this.charset = charset;
+		this.vocabulary = vocabulary;
+		this.byteChunkSize = byteChunkSize;
+		this.symbolChunkSize = symbolChunkSize;
+		channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+	}
+
+	public boolean hasNext() {
+		if (current != null && position < current.length)
+			return true;
+		if (eof)
+			return false;
+		if (current == null)
+			start();
+		else
+			emptySymbols.offer(current);
+		current = null;
+		try {
+			Chunk next = fullSymbols.take();
+			if (next == END_OF_SYMBOLS) {
+				eof = true;
+				return false;
+			}
+			current = next;
+			position = 0;
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			return false;
+		}
+	}
+
+	public int nextInt() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return current.symbols[position++];
+	}
+
+	/**
+	 * Reads up to <code>length</code> symbols into <code>buffer</code>, starting at <code>offset</code>.
+	 * @return the number of symbols read, or -1 at the end of the file.
+	 */
+	public int read(int[] buffer, int offset, int length) {
+		if (!hasNext())
+			return -1;
+		int n = Math.min(length, current.length - position);
+		System.arraycopy(current.symbols, position, buffer, offset, n);
+		position += n;
+		return n;
+	}
+
+	/**
+	 * Stops the reader and decoder threads and releases the file. The pipeline stops producing output.
+	 */
+	public void close() {
+		closed = true;
+		eof = true;
+		current = null;
+		if (reader != null) {
+			reader.interrupt();
+			decoder.interrupt();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+		}
+	}
+
+	public String fileName() {
+		return fileName;
+	}
+
+	/**
+	 * Gets the exception which ended reading the file early, or null if there was none.
+	 */
+	public IOException error() {
+		return error;
+	}
+
+	/**
+	 * Fills the queues with empty chunks and starts the reader and decoder threads.
+	 */
+	private void start() {
+		emptyBytes = new ArrayBlockingQueue<ByteBuffer>(CHUNKS);
+		fullBytes = new ArrayBlockingQueue<ByteBuffer>(CHUNKS + 1);
+		emptySymbols = new ArrayBlockingQueue<Chunk>(CHUNKS);
+		fullSymbols = new ArrayBlockingQueue<Chunk>(CHUNKS + 1);
+		for (int i = 0; i < CHUNKS; i++) {
+			emptyBytes.add(ByteBuffer.allocate(byteChunkSize));
+			emptySymbols.add(new Chunk(symbolChunkSize));
+		}
+		reader = new Thread(this::readBytes, "TextPipeline reader: " + fileName);
+		decoder = new Thread(this::decodeSymbols, "TextPipeline decoder: " + fileName);
+		reader.setDaemon(true);
+		decoder.setDaemon(true);
+		reader.start();
+		decoder.start();
+	}
+
+	/**
+	 * The first stage: reads the file into byte chunks until it ends.
+	 * The queue of full chunks has room for the end marker on top of every chunk.
+	 */
+	private void readBytes() {
+		try {
+			while (true) {
+				ByteBuffer bytes = emptyBytes.take();
+				bytes.clear();
+				while (bytes.hasRemaining() && channel.read(bytes) >= 0);
+				bytes.flip();
+				if (!bytes.hasRemaining())
+					break;
+				fullBytes.put(bytes);
+			}
+		} catch (IOException e) {
+			//not when the decoder has failed and interrupted a read
+			if (!closed && error == null)
+				error = e;
+		} catch (InterruptedException e) {
+			//interrupted by close(), or by the decoder when it fails
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+			if (!closed)
+				fullBytes.add(END_OF_BYTES);
+		}
+	}
+
+	/**
+	 * The second stage: decodes the byte chunks, and tokenizes them if there is a vocabulary,
+	 * into symbol chunks. The symbols always end with END_OF_SYMBOLS unless the pipeline was closed,
+	 * so the consumer never waits for a decoder that has failed.
+	 */
+	private void decodeSymbols() {
+		Reader chars = new ChunkReader();
+		try {
+			Chunk chunk = emptySymbols.take();
+			if (vocabulary == null) {
+				char[] buffer = new char[symbolChunkSize];
+				int n;
+				while ((n = chars.read(buffer, 0, buffer.length)) > 0) {
+					for (int i = 0; i < n; i++) chunk.symbols[i] = buffer[i];
+					chunk.length = n;
+					fullSymbols.put(chunk);
+					chunk = emptySymbols.take();
+				}
+			}
+			else {
+				TokenIterator tokens = new TokenIterator(chars, vocabulary);
+				chunk.length = 0;
+				while (tokens.hasNext()) {
+					chunk.symbols[chunk.length++] = tokens.nextInt();
+					if (chunk.length == chunk.symbols.length) {
+						fullSymbols.put(chunk);
+						chunk = emptySymbols.take();
+						chunk.length = 0;
+					}
+				}
+				if (chunk.length > 0)
+					fullSymbols.put(chunk);
+			}
+		} catch (InterruptedIOException | InterruptedException e) {
+			//an interruption by close(), after which nobody is left to read the symbols
+		} catch (IOException | RuntimeException e) {
+			//ends the stream where decoding stopped, like an IO exception of the reader
+			if (!closed)
+				error = e instanceof IOException ? (IOException) e : new IOException("Could not decode " + fileName + ".", e);
+			reader.interrupt();
+		} finally {
+			if (!closed)
+				fullSymbols.add(END_OF_SYMBOLS);
+		}
+	}
+
+	/**
+	 * A run of symbols, of which the first <code>length</code> are in use.
+	 */
+	private static class Chunk {
+		int[] symbols;
+		int length;
+
+		Chunk(int capacity) {
+			symbols = new int[capacity];
+		}
+	}
+
+	/**
+	 * Decodes the byte chunks of the reader stage as they arrive, handing each back once it has been
+	 * copied. The bytes of a char split between two chunks are carried over to the next one.
+	 */
+	private class ChunkReader extends Reader {
+		private CharsetDecoder charDecoder;
+		/**Bytes carried over from the last chunk, followed by the current chunk.*/
+		private ByteBuffer pending;
+		private CharBuffer decoded;
+		private boolean ended;
+
+		ChunkReader() {
+			charDecoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			pending = ByteBuffer.allocate(byteChunkSize + 16);
+			pending.flip();
+			decoded = CharBuffer.allocate(symbolChunkSize);
+			decoded.flip();
+		}
+
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			if (!decoded.hasRemaining())
+				fill();
+			if (!decoded.hasRemaining())
+				return -1;
+			int n = Math.min(length, decoded.remaining());
+			decoded.get(buffer, offset, n);
+			return n;
+		}
+
+		/**
+		 * Decodes the next block of chars, taking the next byte chunk whenever the pending bytes run out.
+		 */
+		private void fill() throws IOException {
+			decoded.clear();
+			try {
+				while (decoded.position() == 0 && !ended) {
+					//overflow leaves the rest of the pending bytes for the next block
+					if (charDecoder.decode(pending, decoded, false).isOverflow())
+						break;
+					ByteBuffer bytes = fullBytes.take();
+					if (bytes == END_OF_BYTES) {
+						charDecoder.decode(pending, decoded, true);
+						charDecoder.flush(decoded);
+						ended = true;
+					}
+					else {
+						pending.compact();
+						pending.put(bytes);
+						pending.flip();
+						emptyBytes.add(bytes);
+					}
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			} finally {
+				decoded.flip();
+			}
+		}
+
+		public void close() {
+		}
+	}
+}
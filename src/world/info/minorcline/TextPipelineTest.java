@@ -0,0 +1,167 @@
+package world.info.minorcline;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SplittableRandom;
+
+public class TextPipelineTest {
+	private static final String TEXT = "Gr\u00fc\u00dfe, na\u00efve caf\u00e9 \ud83d\udc3b! Don't stop, well-known caf\u00e9.";
+	private Path file;
+	private boolean pass = true;
+
+	public TextPipelineTest() throws IOException{
+		file = Files.createTempFile("TextPipelineTest", ".txt");
+		file.toFile().deleteOnExit();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200; i++)
+			sb.append(TEXT).append(i).append('\n');
+		Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static void main(String[] args) throws IOException{
+		TextPipelineTest test = new TextPipelineTest();
+		test.runTests();
+	}
+
+	public void runTests(){
+		Map<String, Boolean> testResults = new HashMap<>();
+
+		testResults.put("testCharsMatchFile", testCharsMatchFile());
+		testResults.put("testSmallChunksSplitChars", testSmallChunksSplitChars());
+		testResults.put("testTokensMatchTokenIterator", testTokensMatchTokenIterator());
+		testResults.put("testAddTextMatchesTextFileIterator", testAddTextMatchesTextFileIterator());
+		testResults.put("testEmptyFile", testEmptyFile());
+		testResults.put("testClose", testClose());
+		testResults.put("testDecoderFailureEndsStream", testDecoderFailureEndsStream());
+
+		for (Entry<String, Boolean> e : testResults.entrySet()){
+			if (e.getValue() == false){
+				System.out.println("Test failure: " + e.getKey());
+				pass = false;
+			}
+		}
+		if (pass)
+			System.out.println("Passed all tests.");
+	}
+
+	private String contents() throws IOException{
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+
+	public boolean testCharsMatchFile(){
+		try{
+			TextPipeline sut = new TextPipeline(file.toString(), StandardCharsets.UTF_8);
+			StringBuilder sb = new StringBuilder();
+			while (sut.hasNext())
+				sb.append((char) sut.nextInt());
+			return contents().equals(sb.toString()) && sut.error() == null;
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	//Chunks of 3 bytes split the two-byte and four-byte chars between chunks.
+	public boolean testSmallChunksSplitChars(){
+		try{
+			TextPipeline sut = new TextPipeline(file.toString(), StandardCharsets.UTF_8, null, 3, 2);
+			StringBuilder sb = new StringBuilder();
+			int[] buffer = new int[5];
+			int n;
+			while ((n = sut.read(buffer, 0, buffer.length)) > 0){
+				for (int i = 0; i < n; i++)
+					sb.append((char) buffer[i]);
+			}
+			return contents().equals(sb.toString());
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testTokensMatchTokenIterator(){
+		try{
+			Vocabulary expectedVocabulary = new Vocabulary();
+			TokenIterator expected = new TokenIterator(new TextFileIterator(file.toString(), StandardCharsets.UTF_8),
+					expectedVocabulary);
+			Vocabulary vocabulary = new Vocabulary();
+			TextPipeline sut = new TextPipeline(file.toString(), StandardCharsets.UTF_8, vocabulary, 7, 3);
+			while (expected.hasNext()){
+				if (!sut.hasNext() || !expectedVocabulary.token(expected.nextInt()).equals(vocabulary.token(sut.nextInt())))
+					return false;
+			}
+			return !sut.hasNext() && vocabulary.size() == expectedVocabulary.size();
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testAddTextMatchesTextFileIterator(){
+		try{
+			IntMarkovGenerator expected = new IntMarkovGenerator(4);
+			expected.addText(new TextFileIterator(file.toString(), StandardCharsets.UTF_8));
+			expected.finalizeGenerator();
+			IntMarkovGenerator sut = new IntMarkovGenerator(4);
+			sut.addText(new TextPipeline(file.toString(), StandardCharsets.UTF_8));
+			sut.finalizeGenerator();
+			if (sut.size() != expected.size() || sut.model().suffixCount() != expected.model().suffixCount())
+				return false;
+			IntMarkovSession a = expected.newSession(new SplittableRandom(5));
+			IntMarkovSession b = sut.newSession(new SplittableRandom(5));
+			for (int i = 0; i < 1000; i++){
+				if (a.generate() != b.generate())
+					return false;
+			}
+			return true;
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testEmptyFile(){
+		try{
+			Path empty = Files.createTempFile("TextPipelineTest", ".txt");
+			empty.toFile().deleteOnExit();
+			TextPipeline sut = new TextPipeline(empty.toString(), StandardCharsets.UTF_8);
+			return !sut.hasNext() && sut.read(new int[4], 0, 4) == -1;
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testClose(){
+		try{
+			TextPipeline sut = new TextPipeline(file.toString(), StandardCharsets.UTF_8, null, 16, 4);
+			sut.nextInt();
+			sut.close();
+			return !sut.hasNext() && sut.error() == null;
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	//A vocabulary that fails on its fifth token stops the decoder; the consumer still reaches the end.
+	public boolean testDecoderFailureEndsStream(){
+		Vocabulary failing = new Vocabulary() {
+			public int id(String token){
+				if (size() == 4 && find(token) < 0)
+					throw new IllegalStateException("full");
+				return super.id(token);
+			}
+		};
+		try{
+			TextPipeline sut = new TextPipeline(file.toString(), StandardCharsets.UTF_8, failing, 16, 4);
+			int symbols = 0;
+			while (sut.hasNext()){
+				sut.nextInt();
+				symbols++;
+			}
+			return symbols > 0 && sut.error() != null && sut.error().getCause() instanceof IllegalStateException;
+		} catch (IOException e){
+			return false;
+		}
+	}
+}
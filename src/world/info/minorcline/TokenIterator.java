@@ -0,0 +1,120 @@
+package world.info.minorcline;
+
+/**
+ * Splits text into tokens and gives the ID of each token in a Vocabulary.
+ * A token is a word (a run of letters and digits, which may contain an apostrophe or a hyphen
+ * between letters, as in "don't" or "well-known"), a run of whitespace, or a single other character.
+ * Together the tokens spell out the whole text, so joining generated tokens gives well-spaced output.
+ * The text is read in bulk, from a TextFileIterator or any Reader, and only one token is held at a time.
+ * An IO exception from the Reader ends the tokens.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+public class TokenIterator implements PrimitiveIterator.OfInt {
+	private static final int BUFFER_SIZE = 1 << 13;
+
+	private Reader text;
+	private Vocabulary vocabulary;
+	private char[] buffer;
+	private int position;
+	private int limit;
+	private StringBuilder token;
+	/**The ID of the next token, or -1 if it has not been read yet.*/
+	private int next;
+
+	public TokenIterator(TextFileIterator text, Vocabulary vocabulary) {
+		this(text.reader(), vocabulary);
+	}
+
+	public TokenIterator(Reader text, Vocabulary vocabulary) {
+		this.text = text;
+		this.vocabulary = vocabulary;
+		buffer = new char[BUFFER_SIZE];
+		position = 0;
+		limit = 0;
+		token = new StringBuilder();
+		next = -1;
+	}
+
+	public boolean hasNext() {
+		if (next < 0)
+			next = readToken();
+		return next >= 0;
+	}
+
+	public int nextInt() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		int id = next;
+		next = -1;
+		return id;
+	}
+
+	/**
+	 * Reads the next token and interns it.
+	 * @return the token's ID, or -1 at the end of the text.
+	 */
+	private int readToken() {
+		if (!fill(1))
+			return -1;
+		token.setLength(0);
+		char c = buffer[position++];
+		token.append(c);
+		if (isWordChar(c)) {
+			while (fill(1)) {
+				c = buffer[position];
+				if (isWordChar(c)) {
+					token.append(c);
+					position++;
+				}
+				//a joining mark stays in the word only if a letter follows it
+				else if ((c == '\'' || c == '-' || c == '\u2019') && fill(2) && isWordChar(buffer[position + 1])) {
+					token.append(c).append(buffer[position + 1]);
+					position += 2;
+				}
+				else {
+					break;
+				}
+			}
+		}
+		else if (Character.isWhitespace(c)) {
+			while (fill(1) && Character.isWhitespace(buffer[position])) token.append(buffer[position++]);
+		}
+		return vocabulary.id(token.toString());
+	}
+
+	/**
+	 * Makes sure at least <code>count</code> chars are buffered, unless the text ends first.
+	 * @return true if they are.
+	 */
+	private boolean fill(int count) {
+		while (limit - position < count) {
+			if (position > 0) {
+				System.arraycopy(buffer, position, buffer, 0, limit - position);
+				limit -= position;
+				position = 0;
+			}
+			int n;
+			try {
+				n = text.read(buffer, limit, buffer.length - limit);
+			} catch (IOException e) {
+				return false;
+			}
+			if (n <= 0)
+				return false;
+			limit += n;
+		}
+		return true;
+	}
+
+	/**
+	 * Letters, digits and the halves of surrogate pairs, which are kept together with their word.
+	 */
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || Character.isSurrogate(c);
+	}
+}
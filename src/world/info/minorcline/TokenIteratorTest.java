@@ -0,0 +1,117 @@
+package world.info.minorcline;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+public class TokenIteratorTest {
+	private static final String TEXT = "Don't stop,  well-known 42 - stop!\n";
+	private Path file;
+	private boolean pass = true;
+
+	public TokenIteratorTest() throws IOException{
+		file = Files.createTempFile("TokenIteratorTest", ".txt");
+		file.toFile().deleteOnExit();
+		Files.write(file, TEXT.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static void main(String[] args) throws IOException{
+		TokenIteratorTest test = new TokenIteratorTest();
+		test.runTests();
+	}
+
+	public void runTests(){
+		Map<String, Boolean> testResults = new HashMap<>();
+
+		testResults.put("testTokens", testTokens());
+		testResults.put("testRepeatedTokenSharesId", testRepeatedTokenSharesId());
+		testResults.put("testVocabularySaveAndLoad", testVocabularySaveAndLoad());
+		testResults.put("testTokenWhileAdding", testTokenWhileAdding());
+
+		for (Entry<String, Boolean> e : testResults.entrySet()){
+			if (e.getValue() == false){
+				System.out.println("Test failure: " + e.getKey());
+				pass = false;
+			}
+		}
+		if (pass)
+			System.out.println("Passed all tests.");
+	}
+
+	private List<Integer> ids(Vocabulary vocabulary) throws IOException{
+		TokenIterator sut = new TokenIterator(new TextFileIterator(file.toString(), StandardCharsets.UTF_8), vocabulary);
+		List<Integer> ids = new ArrayList<>();
+		while (sut.hasNext())
+			ids.add(sut.nextInt());
+		return ids;
+	}
+
+	public boolean testTokens(){
+		try{
+			Vocabulary vocabulary = new Vocabulary();
+			List<String> tokens = new ArrayList<>();
+			for (int id : ids(vocabulary))
+				tokens.add(vocabulary.token(id));
+			return tokens.equals(Arrays.asList("Don't", " ", "stop", ",", "  ", "well-known", " ", "42",
+					" ", "-", " ", "stop", "!", "\n"));
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testRepeatedTokenSharesId(){
+		try{
+			Vocabulary vocabulary = new Vocabulary();
+			List<Integer> ids = ids(vocabulary);
+			return ids.get(2).equals(ids.get(11)) && ids.get(0) == 0 && vocabulary.size() == 10;
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public boolean testVocabularySaveAndLoad(){
+		try{
+			Vocabulary vocabulary = new Vocabulary();
+			List<Integer> ids = ids(vocabulary);
+			Path saved = Files.createTempFile("TokenIteratorTest", ".vocab");
+			saved.toFile().deleteOnExit();
+			vocabulary.save(saved);
+			Vocabulary loaded = Vocabulary.load(saved);
+			return loaded.size() == vocabulary.size() && ids(loaded).equals(ids)
+					&& loaded.find("well-known") == vocabulary.find("well-known");
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	//Reads each token as soon as its ID is handed out, while the vocabulary grows past its initial capacity.
+	public boolean testTokenWhileAdding(){
+		Vocabulary vocabulary = new Vocabulary();
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < 5000; i++)
+				vocabulary.id("t" + i);
+		});
+		writer.start();
+		boolean seen = true;
+		int n;
+		do{
+			n = vocabulary.size();
+			if (n > 0 && !vocabulary.token(n - 1).equals("t" + (n - 1)))
+				seen = false;
+		} while (n < 5000);
+		try{
+			writer.join();
+			vocabulary.token(5000);
+			return false;
+		} catch (InterruptedException | IndexOutOfBoundsException e){
+			return seen && vocabulary.token(4999).equals("t4999");
+		}
+	}
+}
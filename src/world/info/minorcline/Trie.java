@@ -3,29 +3,32 @@ package world.info.minorcline;
 
 import java.lang.Iterable;
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 public class Trie<K, V>{
 
     private Node<K,V> head;
     private int size;
-    private HashPile<V> values;
+    //the nodes holding values, in the order they got them, linked through the nodes themselves
+    private Node<K,V> firstValued;
+    private Node<K,V> lastValued;
     
 
     public Trie(){
         head = new Node<K,V>();
         size = 0;
-        values = new HashPile<>();
     }
 
     public void clear(){
         head = new Node<K,V>();
         size = 0;
+        firstValued = null;
+        lastValued = null;
     }
 
     public int size(){
@@ -61,13 +64,11 @@ public class Trie<K, V>{
             }
             node = child;
         }
-        if (node.value == null)
+        if (node.value == null){
             size ++;
-        if (node.value != value) {
-        	values.add(value);
-        	values.removeExactly(node.value);
-            node.value = value;
+            link(node);
         }
+        node.value = value;
     }
 
     public boolean containsKey(K[] sequence){
@@ -101,29 +102,36 @@ public class Trie<K, V>{
     }
 
     private void remove(Iterator<K> itr){
-        Node<K,V> child = head;
         Node<K,V> node = head;
 
-        K emptyBranchParent = null;
+        //the deepest node on the path that must stay, and the key of the branch below it
+        //which is left empty once the value is removed
         Node<K,V> lastNonEmpty = head;
+        K emptyBranchKey = null;
+        boolean emptyBranch = false;
 
         while (itr.hasNext()){
             K k = itr.next();
-            child = node.children.get(k);
+            Node<K,V> child = node.children.get(k);
             if (child == null){
                 return;
             }
-            if (node.value != null && itr.hasNext()){
+            if (node == head || node.value != null || node.children.size() > 1){
                 lastNonEmpty = node;
-                emptyBranchParent = k;
-            }
-            if (itr.hasNext()){
-                node = child;
+                emptyBranchKey = k;
+                emptyBranch = true;
             }
+            node = child;
+        }
+        if (node.value == null){
+            return;
         }
         size--;
-        values.removeExactly(child.value);
-        lastNonEmpty.children.remove(emptyBranchParent);
+        unlink(node);
+        node.value = null;
+        if (node.children.isEmpty() && emptyBranch){
+            lastNonEmpty.children.remove(emptyBranchKey);
+        }
     }
 
     public V get(K[] sequence){
@@ -134,6 +142,17 @@ public class Trie<K, V>{
         return get(sequence.iterator());
     }
 
+    /**
+     * Looks up the items in <code>window</code>, oldest first, without allocating an Iterator.
+     */
+    public V get(ContextWindow<K> window){
+        Node<K,V> node = head;
+        for (int i = 0; i < window.size() && node != null; i++){
+            node = node.children.get(window.get(i));
+        }
+        return node == null ? null : node.value;
+    }
+
     private V get(Iterator<K> itr){
         Node<K,V> node = head;
         while (itr.hasNext()){
@@ -147,9 +166,87 @@ public class Trie<K, V>{
         return node.value;
     }
     
+    /**
+     * Iterates over all the values in the trie, in the order their keys were first put.
+     */
     public Iterator<V> valuesIterator(){
-    	return values.iterator();
-    	
+        return new Iterator<V>(){
+            Node<K,V> next = firstValued;
+
+            public boolean hasNext(){
+                return next != null;
+            }
+
+            public V next(){
+                if (next == null)
+                    throw new NoSuchElementException();
+                V v = next.value;
+                next = next.nextValued;
+                return v;
+            }
+        };
+    }
+
+    /**
+     * Appends a node which has just got a value to the list of valued nodes.
+     */
+    private void link(Node<K,V> node){
+        node.prevValued = lastValued;
+        node.nextValued = null;
+        if (lastValued == null)
+            firstValued = node;
+        else
+            lastValued.nextValued = node;
+        lastValued = node;
+    }
+
+    /**
+     * Takes a node which is losing its value out of the list of valued nodes.
+     */
+    private void unlink(Node<K,V> node){
+        if (node.prevValued == null)
+            firstValued = node.nextValued;
+        else
+            node.prevValued.nextValued = node.nextValued;
+        if (node.nextValued == null)
+            lastValued = node.prevValued;
+        else
+            node.nextValued.prevValued = node.prevValued;
+        node.prevValued = null;
+        node.nextValued = null;
+    }
+
+    /**
+     * Packs the trie into a read-only CompactTrie holding the same keys and values.
+     * The nodes are numbered breadth-first, and the children of each node are sorted by key hash.
+     */
+    public CompactTrie<K,V> freeze(){
+        List<Node<K,V>> nodes = new ArrayList<>();
+        List<Object> keys = new ArrayList<>();
+        List<Object> nodeValues = new ArrayList<>();
+        nodes.add(head);
+        keys.add(null);
+        nodeValues.add(head.value);
+        int[] firstChild = new int[16];
+        for (int i = 0; i < nodes.size(); i++){
+            if (i + 1 >= firstChild.length)
+                firstChild = Arrays.copyOf(firstChild, firstChild.length * 2);
+            firstChild[i] = nodes.size();
+            List<Map.Entry<K, Node<K,V>>> children = new ArrayList<>(nodes.get(i).children.entrySet());
+            children.sort((a, b) -> Integer.compare(hash(a.getKey()), hash(b.getKey())));
+            for (Map.Entry<K, Node<K,V>> child : children){
+                nodes.add(child.getValue());
+                keys.add(child.getKey());
+                nodeValues.add(child.getValue().value);
+            }
+        }
+        firstChild = Arrays.copyOf(firstChild, nodes.size() + 1);
+        firstChild[nodes.size()] = nodes.size();
+        return new CompactTrie<K,V>(firstChild, keys.toArray(), nodeValues.toArray(), size);
+    }
+
+    private static int hash(Object key){
+        return key == null ? 0 : key.hashCode();
     }
 
     private Iterator<K> iteratorForArray(K[] array){
@@ -169,6 +266,9 @@ public class Trie<K, V>{
     private class Node<X,Y>{
         HashMap<X, Node<X,Y>> children;
         Y value;
+        //neighbours in the list of valued nodes
+        Node<X,Y> prevValued;
+        Node<X,Y> nextValued;
         Node(){
             children = new HashMap<>();
         }
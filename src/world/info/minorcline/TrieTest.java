@@ -2,6 +2,7 @@ package world.info.minorcline;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Map.Entry;
@@ -67,6 +68,10 @@ public class TrieTest{
         testResults.put("testSizeAddOne", testSizeAddOne());
         testResults.put("testSizeAddSeveral", testSizeAddSeveral());
         testResults.put("testSizeRemoveOne", testSizeRemoveOne());
+        testResults.put("testGetWindow", testGetWindow());
+        testResults.put("testRemoveKeyWithSameLengthSibling", testRemoveKeyWithSameLengthSibling());
+        testResults.put("testRemoveMissingValue", testRemoveMissingValue());
+        testResults.put("testValuesIteratorAfterRemove", testValuesIteratorAfterRemove());
         
 
         for (Entry<String, Boolean> e : testResults.entrySet()){
@@ -105,6 +110,19 @@ public class TrieTest{
         return "TestABCD".equals(result);
     }
 
+    //The window wraps around after sliding from "zab" to "abcd".
+    public boolean testGetWindow(){
+        sut.clear();
+        sut.put(listABCD, "TestABCD");
+        sut.put(listABC, "TestABC");
+        ContextWindow<Character> window = new ContextWindow<>(4);
+        for (char c : "zabcd".toCharArray())
+            window.add(c);
+        ContextWindow<Character> shorter = new ContextWindow<>(listABC);
+        return "TestABCD".equals(sut.get(window)) && "TestABC".equals(sut.get(shorter))
+                && sut.get(new ContextWindow<Character>(listAB)) == null;
+    }
+
     public boolean testGetNull1(){
         sut.clear();
         sut.put(listABC, "TestABC");
@@ -193,4 +211,36 @@ public class TrieTest{
         sut.remove(listABCD);
         return sut.size() == 1;
     }
-}
\ No newline at end of file
+
+    public boolean testRemoveKeyWithSameLengthSibling(){
+        sut.clear();
+        sut.put(new Character[] {'a', 'b', 'x'}, "ABX");
+        sut.put(new Character[] {'a', 'b', 'y'}, "ABY");
+        sut.remove(new Character[] {'a', 'b', 'x'});
+        return !sut.containsKey(new Character[] {'a', 'b', 'x'})
+                && "ABY".equals(sut.get(new Character[] {'a', 'b', 'y'})) && sut.size() == 1;
+    }
+
+    public boolean testRemoveMissingValue(){
+        sut.clear();
+        sut.put(listABCD, "B");
+        sut.remove(listABC);
+        sut.remove(listZZ);
+        return sut.size() == 1 && sut.containsKey(listABCD);
+    }
+
+    public boolean testValuesIteratorAfterRemove(){
+        sut.clear();
+        sut.put(listAB, "AB");
+        sut.put(listABC, "ABC");
+        sut.put(listABCD, "ABCD");
+        sut.remove(listABC);
+        sut.put(listAB, "AB2");
+        List<String> values = new ArrayList<>();
+        Iterator<String> itr = sut.valuesIterator();
+        while (itr.hasNext())
+            values.add(itr.next());
+        sut.clear();
+        return values.equals(List.of("AB2", "ABCD")) && !sut.valuesIterator().hasNext();
+    }
+}
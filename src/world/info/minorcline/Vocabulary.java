@@ -0,0 +1,65 @@
+package world.info.minorcline;
+
+/**
+ * Interns tokens into small integer IDs, so that models can be trained on ints instead of Strings:
+ * a SymbolDictionary of Strings that can be saved and loaded alongside a model.
+ * IDs are handed out in the order tokens are first seen, starting from 0.
+ * One Vocabulary may be shared by tokenizers and generating sessions on many threads at once: looking up
+ * a known token or the token of an ID takes no lock, and only adding a new token does.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class Vocabulary extends SymbolDictionary<String> {
+	private static final int MAGIC = 0x4d4b5656;
+
+	/**
+	 * Gets the token with the given ID. Takes no lock, since it is called for every generated token.
+	 * @throws IndexOutOfBoundsException if no token has that ID.
+	 */
+	public String token(int id) throws IndexOutOfBoundsException {
+		return symbol(id);
+	}
+
+	/**
+	 * Writes the tokens in ID order, to be read back by <code>load()</code>.
+	 */
+	public void save(Path file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			//tokens added meanwhile are left out; the ones written keep their IDs
+			int size = size();
+			out.writeInt(MAGIC);
+			out.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				String token = token(i);
+				out.writeInt(token.length());
+				out.writeChars(token);
+			}
+		}
+	}
+
+	/**
+	 * Reads a vocabulary written by <code>save()</code>. Every token keeps its ID.
+	 * @throws IOException if the file cannot be read or is not a vocabulary file.
+	 */
+	public static Vocabulary load(Path file) throws IOException {
+		Vocabulary vocabulary = new Vocabulary();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is not a vocabulary file.");
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				char[] token = new char[in.readInt()];
+				for (int j = 0; j < token.length; j++) token[j] = in.readChar();
+				vocabulary.id(new String(token));
+			}
+		}
+		return vocabulary;
+	}
+}